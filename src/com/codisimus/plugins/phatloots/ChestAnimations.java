@@ -1,8 +1,15 @@
 package com.codisimus.plugins.phatloots;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
@@ -18,6 +25,8 @@ public class ChestAnimations {
     private static final String CRAFTBUKKIT_PACKAGE = "org.bukkit.craftbukkit." + VERSION + ".";
 
     private static final boolean USE_API;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Map<String, List<MethodHandle>> HANDLES = new ConcurrentHashMap<>(); //Class.member -> MethodHandles which are resolved only once
 
     static {
         boolean useApi = true;
@@ -70,7 +79,6 @@ public class ChestAnimations {
             Object nmsBlock = invokeStaticMethod(CRAFTBUKKIT_PACKAGE + "util.CraftMagicNumbers", "getBlock", block);
             Object packet = construct(NMS_PACKAGE + "PacketPlayOutBlockAction", blockPosition, nmsBlock, 1, openCode);
             Object entityPlayer = invokeMethod(player, "getHandle");
-            invokeMethod(entityPlayer, "getHandle");
             Object playerConnection = getVariable(entityPlayer, "playerConnection");
             invokeMethod(playerConnection, "sendPacket", packet);
         } else {
@@ -83,8 +91,8 @@ public class ChestAnimations {
 
     private static Object getVariable(Object obj, String variableName) {
         try {
-            return obj.getClass().getField(variableName).get(obj);
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException ex) {
+            return getFieldHandle(obj.getClass(), variableName).invoke(obj);
+        } catch (Throwable ex) {
             PhatLoots.logger.log(Level.SEVERE, ex.getMessage(), ex);
             return null;
         }
@@ -92,64 +100,103 @@ public class ChestAnimations {
 
     private static Object getStaticVariable(Class c, String variableName) {
         try {
-            return c.getField(variableName).get(null);
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException ex) {
+            return getFieldHandle(c, variableName).invoke();
+        } catch (Throwable ex) {
             PhatLoots.logger.log(Level.SEVERE, ex.getMessage(), ex);
             return null;
         }
     }
 
     private static Object invokeMethod(Object obj, String methodName, Object... params) {
-        Object ret = null;
-        Class c = obj.getClass();
-        for (Method method : c.getMethods()) {
-            if (method.getName().equals(methodName)) {
-                try {
-                    ret = method.invoke(obj, params);
-                    break;
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    //Fail silently
-                }
-            }
-        }
-        return ret;
+        Object[] args = new Object[params.length + 1];
+        args[0] = obj;
+        System.arraycopy(params, 0, args, 1, params.length);
+        return invokeFirst(getMethodHandles(obj.getClass(), methodName, false), args);
     }
 
     private static Object invokeStaticMethod(String path, String methodName, Object... params) {
-        Object ret = null;
         try {
-            Class c = Class.forName(path);
-            for (Method method : c.getMethods()) {
-                if (method.getName().equals(methodName)) {
-                    try {
-                        ret = method.invoke(null, params);
-                        break;
-                    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                        //Fail silently
-                    }
-                }
-            }
+            return invokeFirst(getMethodHandles(Class.forName(path), methodName, true), params);
         } catch (ClassNotFoundException ex) {
             PhatLoots.logger.log(Level.SEVERE, ex.getMessage(), ex);
+            return null;
         }
-        return ret;
     }
 
     private static Object construct(String path, Object... params) {
-        Object ret = null;
         try {
             Class c = Class.forName(path);
-            for (Constructor ctor : c.getConstructors()) {
-                try {
-                    ret = ctor.newInstance(params);
-                    break;
-                } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    //Fail silently
+            List<MethodHandle> constructors = HANDLES.computeIfAbsent(path + ".<init>", key -> {
+                List<MethodHandle> found = new ArrayList<>();
+                for (Constructor ctor : c.getConstructors()) {
+                    try {
+                        found.add(LOOKUP.unreflectConstructor(ctor));
+                    } catch (IllegalAccessException ex) {
+                        //Skip constructors which cannot be accessed
+                    }
                 }
-            }
+                return found;
+            });
+            return invokeFirst(constructors, params);
         } catch (ClassNotFoundException ex) {
             PhatLoots.logger.log(Level.SEVERE, ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Invokes each of the given MethodHandles until one succeeds
+     *
+     * @param candidates The MethodHandles which have the wanted name
+     * @param args The arguments including the target Object of an instance method
+     * @return The returned value or null if no MethodHandle succeeded
+     */
+    private static Object invokeFirst(List<MethodHandle> candidates, Object... args) {
+        for (MethodHandle handle : candidates) {
+            if (handle.type().parameterCount() != args.length) {
+                continue;
+            }
+            try {
+                return handle.invokeWithArguments(args);
+            } catch (Throwable ex) {
+                //Fail silently
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the MethodHandles of each public method of the given Class with the given name.
+     * The methods are only looked up the first time
+     *
+     * @param c The Class which has the methods
+     * @param methodName The name of the methods
+     * @param isStatic true to find static methods rather than instance methods
+     * @return The MethodHandles of the methods
+     */
+    private static List<MethodHandle> getMethodHandles(Class c, String methodName, boolean isStatic) {
+        return HANDLES.computeIfAbsent(c.getName() + '.' + methodName, key -> {
+            List<MethodHandle> found = new ArrayList<>();
+            for (Method method : c.getMethods()) {
+                if (method.getName().equals(methodName) && Modifier.isStatic(method.getModifiers()) == isStatic) {
+                    try {
+                        found.add(LOOKUP.unreflect(method));
+                    } catch (IllegalAccessException ex) {
+                        //Skip methods which cannot be accessed
+                    }
+                }
+            }
+            return found;
+        });
+    }
+
+    private static MethodHandle getFieldHandle(Class c, String variableName) throws NoSuchFieldException, IllegalAccessException {
+        String key = c.getName() + '#' + variableName;
+        List<MethodHandle> handles = HANDLES.get(key);
+        if (handles == null) {
+            handles = Collections.singletonList(LOOKUP.unreflectGetter(c.getField(variableName)));
+            HANDLES.put(key, handles);
         }
-        return ret;
+        return handles.get(0);
     }
 }
@@ -0,0 +1,274 @@
+package com.codisimus.plugins.phatloots;
+
+import com.codisimus.plugins.phatloots.events.ChestRespawnEvent.RespawnReason;
+import com.codisimus.plugins.phatloots.util.LongObjectHashMap;
+import com.codisimus.plugins.phatloots.util.TimingWheel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.logging.Level;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * Schedules broken PhatLootChests to respawn using a single TimingWheel rather than a task per chest.
+ * The queue is saved to Respawns.yml shortly after each change so that broken chests still respawn after a restart or crash
+ *
+ * @author Codisimus
+ */
+public class ChestRespawns {
+    private static final String FILE_NAME = "Respawns.yml";
+    private static final long SAVE_DELAY = 20L; //Changes within a second are written together
+    static int respawnsPerTick; //The most chests which may respawn each tick
+    private static final TimingWheel<PhatLootChest> wheel = new TimingWheel<>(1024);
+    private static final HashMap<PhatLootChest, Scheduled> scheduled = new HashMap<>(); //PhatLootChest -> When it should respawn
+    private static final ArrayDeque<PhatLootChest> ready = new ArrayDeque<>(); //Chests which are due but have not yet respawned
+    private static final List<PhatLootChest> due = new ArrayList<>();
+    private static final HashMap<PhatLootChest, RespawnReason> pending = new HashMap<>(); //Chests which came due while their Chunk was not loaded
+    private static final HashMap<UUID, LongObjectHashMap<List<PhatLootChest>>> pendingByChunk = new HashMap<>(); //World UUID -> Packed Chunk Location -> Pending chests
+    private static final YamlConfiguration unresolved = new YamlConfiguration(); //Chests in Worlds which were not loaded at startup
+    private static boolean loaded; //False until Respawns.yml has been read so that it is not overwritten before then
+    private static boolean saveQueued; //True if a save will run after the SAVE_DELAY
+
+    /**
+     * When a PhatLootChest is scheduled to respawn
+     *
+     * @param tick The tick of the TimingWheel at which the chest is due
+     * @param reason The RespawnReason to respawn the chest with
+     */
+    private record Scheduled(long tick, RespawnReason reason) {}
+
+    /**
+     * Schedules the given PhatLootChest to respawn after the given amount of time.
+     * Any previous schedule of the chest is replaced
+     *
+     * @param chest The broken PhatLootChest
+     * @param delay The amount of time (in ticks) until the chest should respawn
+     * @param reason The RespawnReason to respawn the chest with
+     */
+    public static void schedule(PhatLootChest chest, long delay, RespawnReason reason) {
+        scheduled.put(chest, new Scheduled(wheel.schedule(chest, delay), reason));
+        changed();
+    }
+
+    /**
+     * Cancels the scheduled respawn of the given PhatLootChest
+     *
+     * @param chest The PhatLootChest which should no longer respawn
+     */
+    public static void cancel(PhatLootChest chest) {
+        scheduled.remove(chest);
+        pending.remove(chest);
+        changed();
+    }
+
+    /**
+     * Queues Respawns.yml to be saved after a short delay.
+     * Any other changes before then are written along with this one
+     */
+    static void changed() {
+        if (!loaded || saveQueued || !PhatLoots.plugin.isEnabled()) {
+            return;
+        }
+        saveQueued = true;
+        PhatLoots.plugin.getServer().getScheduler().runTaskLater(PhatLoots.plugin, ChestRespawns::save, SAVE_DELAY);
+    }
+
+    /**
+     * Returns the number of PhatLootChests which are scheduled to respawn
+     *
+     * @return The number of scheduled chests
+     */
+    public static int size() {
+        return scheduled.size() + pending.size();
+    }
+
+    /**
+     * Advances the TimingWheel by one tick and respawns at most RespawnsPerTick chests which are due.
+     * Chests which are due beyond that limit respawn during the following ticks
+     */
+    static void tick() {
+        wheel.advance(due);
+        for (PhatLootChest chest : due) {
+            //Skip chests which have since been rescheduled or cancelled
+            Scheduled s = scheduled.get(chest);
+            if (s != null && s.tick() == wheel.getTick()) {
+                ready.add(chest);
+            }
+        }
+        due.clear();
+
+        int respawned = 0;
+        while (respawned < respawnsPerTick && !ready.isEmpty()) {
+            PhatLootChest chest = ready.poll();
+            Scheduled s = scheduled.get(chest);
+            if (s != null && s.tick() <= wheel.getTick()) {
+                scheduled.remove(chest);
+                if (defer(chest, s.reason())) {
+                    continue;
+                }
+                chest.respawn(s.reason());
+                respawned++;
+            }
+        }
+    }
+
+    /**
+     * Marks the given PhatLootChest as pending if its Chunk is not loaded.
+     * Respawning would otherwise load the Chunk
+     *
+     * @param chest The PhatLootChest which is due
+     * @param reason The RespawnReason to respawn the chest with
+     * @return true if the chest will respawn once its Chunk is loaded
+     */
+    private static boolean defer(PhatLootChest chest, RespawnReason reason) {
+        World world = chest.getWorld();
+        if (world == null) {
+            return false;
+        }
+
+        Block block = chest.getBlock();
+        int chunkX = block.getX() >> 4;
+        int chunkZ = block.getZ() >> 4;
+        if (world.isChunkLoaded(chunkX, chunkZ)) {
+            return false;
+        }
+
+        if (pending.put(chest, reason) == null) {
+            pendingByChunk.computeIfAbsent(world.getUID(), key -> new LongObjectHashMap<>())
+                          .computeIfAbsent(PhatLootChest.toChunkKey(chunkX, chunkZ), key -> new ArrayList<>())
+                          .add(chest);
+        }
+        return true;
+    }
+
+    /**
+     * Respawns the chests which came due while the given Chunk was not loaded
+     *
+     * @param chunk The Chunk which was loaded
+     */
+    public static void chunkLoaded(Chunk chunk) {
+        LongObjectHashMap<List<PhatLootChest>> worldPending = pendingByChunk.get(chunk.getWorld().getUID());
+        if (worldPending == null) {
+            return;
+        }
+
+        List<PhatLootChest> chests = worldPending.remove(PhatLootChest.toChunkKey(chunk.getX(), chunk.getZ()));
+        if (chests == null) {
+            return;
+        }
+
+        for (PhatLootChest chest : chests) {
+            //Skip chests which have since been respawned some other way
+            RespawnReason reason = pending.remove(chest);
+            if (reason != null && chest.isBroken()) {
+                chest.respawn(reason);
+            }
+        }
+    }
+
+    /**
+     * Saves every broken PhatLootChest along with how long until it respawns.
+     * The file is written on the save thread and nothing is saved until Respawns.yml has been loaded
+     */
+    static void save() {
+        saveQueued = false;
+        if (!loaded) {
+            return;
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        for (PhatLootChest chest : PhatLootChest.chestsToRespawn) {
+            ConfigurationSection section = config.createSection(chest.toString());
+            Scheduled s = scheduled.get(chest);
+            RespawnReason pendingReason = pending.get(chest);
+            if (s != null) {
+                section.set("Delay", Math.max(0, s.tick() - wheel.getTick()));
+                section.set("Reason", s.reason().name());
+            } else if (pendingReason != null) {
+                section.set("Delay", 0);
+                section.set("Reason", pendingReason.name());
+            } else {
+                section.set("Delay", -1);
+                section.set("Reason", RespawnReason.PLUGIN_DISABLED.name());
+            }
+            chest.saveSnapshots(section);
+        }
+        for (String key : unresolved.getKeys(false)) {
+            config.set(key, unresolved.get(key));
+        }
+
+        String data = config.getKeys(false).isEmpty() ? null : config.saveToString();
+        File file = new File(PhatLoots.dataFolder, FILE_NAME);
+        PhatLoots.runSaveTask(() -> {
+            try {
+                if (data == null) {
+                    Files.deleteIfExists(file.toPath());
+                } else {
+                    Files.write(file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Failed to save " + FILE_NAME, ex);
+            }
+        });
+    }
+
+    /**
+     * Loads the broken PhatLootChests which were saved before the last shutdown and schedules them to respawn.
+     * Chests which were not going to respawn on their own respawn right away as they would have on shutdown
+     */
+    static void load() {
+        File file = new File(PhatLoots.dataFolder, FILE_NAME);
+        if (!file.exists()) {
+            loaded = true;
+            return;
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(file);
+        } catch (IOException | InvalidConfigurationException ex) {
+            //The file is left as it is rather than being overwritten
+            PhatLoots.logger.log(Level.SEVERE, "Failed to load " + FILE_NAME, ex);
+            return;
+        }
+        loaded = true;
+
+        for (String key : config.getKeys(false)) {
+            ConfigurationSection section = config.getConfigurationSection(key);
+            PhatLootChest chest = PhatLootChest.getChest(key.split("'"));
+            if (chest == null) {
+                //Keep the chest in the file so that it is not lost while its World is not loaded
+                unresolved.set(key, section);
+                continue;
+            }
+
+            chest.loadSnapshots(section);
+            if (!chest.isBroken()) {
+                continue;
+            }
+
+            long delay = section.getLong("Delay");
+            RespawnReason reason;
+            try {
+                reason = delay < 0 ? RespawnReason.PLUGIN_DISABLED : RespawnReason.valueOf(section.getString("Reason"));
+            } catch (IllegalArgumentException | NullPointerException ex) {
+                reason = RespawnReason.OTHER;
+            }
+            schedule(chest, Math.max(0, delay), reason);
+        }
+    }
+
+    /**
+     * Starts the task which respawns chests as they are due
+     */
+    static void start() {
+        PhatLoots.plugin.getServer().getScheduler().runTaskTimer(PhatLoots.plugin, ChestRespawns::tick, 1L, 1L);
+    }
+}
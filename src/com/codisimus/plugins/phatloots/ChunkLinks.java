@@ -0,0 +1,372 @@
+package com.codisimus.plugins.phatloots;
+
+import com.codisimus.plugins.phatloots.util.LongObjectHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+
+/**
+ * Stores the links of PhatLootChests in the PersistentDataContainer of their Chunk.
+ * Links are then loaded and unloaded along with the Chunks rather than all being loaded at startup.
+ * Links of Chests files are moved into their Chunks as the Chunks are loaded.
+ * PhatLootChests which are not linked are evicted along with their Chunk so that memory scales with the loaded world
+ *
+ * @author Codisimus
+ */
+public class ChunkLinks {
+    private static final String INDEX_FILE = "ChunkLinks.txt";
+    private static final long SAVE_DELAY = 20L; //Chests files which change within a second are written together
+    static boolean enabled; //True if links should be saved in Chunks rather than Chests files
+    private static boolean saveQueued; //True if the changed Chests files will be saved after the SAVE_DELAY
+    private static NamespacedKey linksKey, xKey, yKey, zKey, phatLootsKey;
+    private static final HashMap<String, LongObjectHashMap<List<PendingLink>>> pendingByChunk = new HashMap<>(); //World Name -> Packed Chunk Location -> Links
+    private static final HashMap<String, Set<String>> pendingByPhatLoot = new HashMap<>(); //PhatLoot Name -> Chest Locations
+    private static final HashSet<String> changedPhatLoots = new HashSet<>(); //PhatLoots whose pending links have been moved
+    private static final HashMap<String, Set<Long>> linkedChunks = new HashMap<>(); //World Name -> Packed Chunk Locations which hold links
+    private static boolean linkedChunksChanged; //True if the index of linked Chunks must be written
+
+    /**
+     * A link from a Chests file which has not yet been moved into its Chunk
+     *
+     * @param phatLoot The name of the PhatLoot
+     * @param chest The chest in the form world'x'y'z
+     * @param x The x-coordinate of the chest
+     * @param y The y-coordinate of the chest
+     * @param z The z-coordinate of the chest
+     */
+    private record PendingLink(String phatLoot, String chest, int x, int y, int z) {}
+
+    /**
+     * Returns true if links of PhatLootChests are saved in their Chunks
+     *
+     * @return true if links are loaded along with Chunks
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Links the PhatLootChests of each loaded Chunk.
+     * This is called after the PhatLoots have been loaded.
+     * The Chunks which hold links are indexed in ChunkLinks.txt so that only those Chunks are read when links are moved
+     * back into the Chests files. The file is deleted once no Chunk holds links
+     */
+    static void load() {
+        File file = new File(PhatLoots.dataFolder, INDEX_FILE);
+        if (file.exists()) {
+            try {
+                for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                    //Each line is in the form world'chunkX'chunkZ
+                    String[] split = line.split("'");
+                    if (split.length == 3) {
+                        linkedChunks.computeIfAbsent(split[0], key -> new HashSet<>())
+                                    .add(PhatLootChest.toChunkKey(Integer.parseInt(split[1]), Integer.parseInt(split[2])));
+                    }
+                }
+            } catch (IOException | NumberFormatException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Failed to read " + INDEX_FILE, ex);
+            }
+        }
+
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                chunkLoaded(chunk);
+            }
+        }
+    }
+
+    /**
+     * Adds the links of a Chests file to be moved into their Chunks as they load
+     *
+     * @param phatLoot The PhatLoot whose chests were loaded
+     * @param chests The chests in the form world'x'y'z
+     */
+    static void addPending(PhatLoot phatLoot, Collection<String> chests) {
+        for (String chest : chests) {
+            String[] split = chest.split("'");
+            try {
+                PendingLink link = new PendingLink(phatLoot.name, chest, Integer.parseInt(split[1]),
+                                                   Integer.parseInt(split[2]), Integer.parseInt(split[3]));
+                pendingByChunk.computeIfAbsent(split[0], key -> new LongObjectHashMap<>())
+                              .computeIfAbsent(PhatLootChest.toChunkKey(link.x() >> 4, link.z() >> 4), key -> new ArrayList<>())
+                              .add(link);
+                pendingByPhatLoot.computeIfAbsent(phatLoot.name, key -> new HashSet<>()).add(chest);
+            } catch (RuntimeException invalid) {
+                PhatLoots.logger.severe("Invalid chest data for PhatLoot: " + phatLoot.name);
+                PhatLoots.logger.severe("Failed line of data: " + chest);
+            }
+        }
+    }
+
+    /**
+     * Returns the links of the given PhatLoot which have not yet been moved into their Chunks
+     *
+     * @param name The name of the PhatLoot
+     * @return The chests in the form world'x'y'z
+     */
+    static Collection<String> getPending(String name) {
+        Set<String> chests = pendingByPhatLoot.get(name);
+        return chests == null ? Collections.emptySet() : chests;
+    }
+
+    /**
+     * Queues the Chests files of each changed PhatLoot to be saved after a short delay.
+     * Any other changes before then are written along with these
+     */
+    private static void queueSave() {
+        if (saveQueued || !PhatLoots.plugin.isEnabled()) {
+            return;
+        }
+        saveQueued = true;
+        Bukkit.getScheduler().runTaskLater(PhatLoots.plugin, ChunkLinks::savePending, SAVE_DELAY);
+    }
+
+    /**
+     * Saves the Chests files of each PhatLoot whose links have been moved into or out of Chunks
+     */
+    static void savePending() {
+        saveQueued = false;
+        for (String name : changedPhatLoots) {
+            PhatLoot phatLoot = PhatLoots.getPhatLoot(name);
+            if (phatLoot != null) {
+                phatLoot.saveChests();
+            }
+        }
+        changedPhatLoots.clear();
+
+        if (linkedChunksChanged) {
+            linkedChunksChanged = false;
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, Set<Long>> entry : linkedChunks.entrySet()) {
+                for (long key : entry.getValue()) {
+                    lines.add(entry.getKey() + "'" + (int) (key >> 32) + "'" + (int) key);
+                }
+            }
+            PhatLoots.runSaveTask(() -> {
+                File file = new File(PhatLoots.dataFolder, INDEX_FILE);
+                try {
+                    if (lines.isEmpty()) {
+                        Files.deleteIfExists(file.toPath());
+                    } else {
+                        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+                    }
+                } catch (IOException ex) {
+                    PhatLoots.logger.log(Level.SEVERE, "Failed to write " + INDEX_FILE, ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records whether the given Chunk holds links
+     *
+     * @param chunk The Chunk whose links were read or written
+     * @param linked True if the Chunk holds links
+     */
+    private static void setLinked(Chunk chunk, boolean linked) {
+        String world = chunk.getWorld().getName();
+        long key = PhatLootChest.toChunkKey(chunk.getX(), chunk.getZ());
+        Set<Long> chunks = linkedChunks.get(world);
+        boolean changed;
+        if (linked) {
+            changed = linkedChunks.computeIfAbsent(world, k -> new HashSet<>()).add(key);
+        } else {
+            changed = chunks != null && chunks.remove(key);
+            if (changed && chunks.isEmpty()) {
+                linkedChunks.remove(world);
+            }
+        }
+        if (changed) {
+            linkedChunksChanged = true;
+            queueSave();
+        }
+    }
+
+    /**
+     * Clears all links which are waiting to be moved into their Chunks
+     */
+    static void clear() {
+        pendingByChunk.clear();
+        pendingByPhatLoot.clear();
+        changedPhatLoots.clear();
+        linkedChunks.clear();
+    }
+
+    /**
+     * Links the PhatLootChests of the given Chunk.
+     * If links are not saved in Chunks then any links of the Chunk are moved back into the Chests files
+     *
+     * @param chunk The Chunk which was loaded
+     */
+    public static void chunkLoaded(Chunk chunk) {
+        if (!enabled) {
+            //Only Chunks which were indexed as holding links are read
+            Set<Long> chunks = linkedChunks.get(chunk.getWorld().getName());
+            if (chunks != null && chunks.contains(PhatLootChest.toChunkKey(chunk.getX(), chunk.getZ()))) {
+                restore(chunk);
+            }
+            return;
+        }
+
+        World world = chunk.getWorld();
+        PersistentDataContainer pdc = chunk.getPersistentDataContainer();
+        boolean changed = false;
+        PersistentDataContainer[] entries = pdc.get(getLinksKey(), PersistentDataType.TAG_CONTAINER_ARRAY);
+        if (entries != null) {
+            setLinked(chunk, true);
+            for (PersistentDataContainer entry : entries) {
+                PhatLootChest chest = PhatLootChest.getChest(world, entry.get(xKey, PersistentDataType.INTEGER),
+                                                             entry.get(yKey, PersistentDataType.INTEGER),
+                                                             entry.get(zKey, PersistentDataType.INTEGER));
+                for (String name : entry.get(phatLootsKey, PersistentDataType.STRING).split("\n")) {
+                    PhatLoot phatLoot = PhatLoots.getPhatLoot(name);
+                    if (phatLoot == null) {
+                        //Drop links to PhatLoots which have been deleted
+                        changed = true;
+                    } else {
+                        phatLoot.linkChunkChest(chest);
+                    }
+                }
+            }
+        }
+
+        //Move links from the Chests files into the Chunk
+        LongObjectHashMap<List<PendingLink>> worldPending = pendingByChunk.get(world.getName());
+        List<PendingLink> pending = worldPending == null ? null : worldPending.remove(PhatLootChest.toChunkKey(chunk.getX(), chunk.getZ()));
+        if (pending != null) {
+            for (PendingLink link : pending) {
+                PhatLoot phatLoot = PhatLoots.getPhatLoot(link.phatLoot());
+                if (phatLoot != null) {
+                    phatLoot.linkChunkChest(PhatLootChest.getChest(world, link.x(), link.y(), link.z()));
+                }
+                pendingByPhatLoot.get(link.phatLoot()).remove(link.chest());
+                changedPhatLoots.add(link.phatLoot());
+            }
+            changed = true;
+            queueSave();
+        }
+
+        if (changed) {
+            save(chunk);
+        }
+    }
+
+    /**
+     * Unlinks and evicts the PhatLootChests of the given Chunk.
+     * Their links are kept in the Chunk until it is loaded again
+     *
+     * @param chunk The Chunk which is being unloaded
+     */
+    public static void chunkUnloaded(Chunk chunk) {
+        if (!enabled) {
+            return;
+        }
+
+        for (PhatLootChest chest : PhatLootChest.getChests(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            for (PhatLoot phatLoot : chest.getLinkedPhatLootArray()) {
+                phatLoot.unlinkChunkChest(chest);
+            }
+        }
+        PhatLootChest.evictChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Writes the links of each PhatLootChest in the Chunk of the given PhatLootChest.
+     * Nothing is written if the Chunk is not loaded since its PhatLootChests are not linked
+     *
+     * @param chest The PhatLootChest whose links have changed
+     */
+    static void save(PhatLootChest chest) {
+        World world = chest.getWorld();
+        Block block = chest.getBlock();
+        if (world != null && world.isChunkLoaded(block.getX() >> 4, block.getZ() >> 4)) {
+            save(world.getChunkAt(block.getX() >> 4, block.getZ() >> 4));
+        }
+    }
+
+    /**
+     * Writes the links of each PhatLootChest in the given Chunk to its PersistentDataContainer
+     *
+     * @param chunk The loaded Chunk
+     */
+    private static void save(Chunk chunk) {
+        PersistentDataContainer pdc = chunk.getPersistentDataContainer();
+        List<PersistentDataContainer> entries = new ArrayList<>();
+        for (PhatLootChest chest : PhatLootChest.getChests(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            PhatLoot[] linked = chest.getLinkedPhatLootArray();
+            if (linked.length == 0) {
+                continue;
+            }
+
+            StringJoiner names = new StringJoiner("\n");
+            for (PhatLoot phatLoot : linked) {
+                names.add(phatLoot.name);
+            }
+            Block block = chest.getBlock();
+            PersistentDataContainer entry = pdc.getAdapterContext().newPersistentDataContainer();
+            entry.set(xKey, PersistentDataType.INTEGER, block.getX());
+            entry.set(yKey, PersistentDataType.INTEGER, block.getY());
+            entry.set(zKey, PersistentDataType.INTEGER, block.getZ());
+            entry.set(phatLootsKey, PersistentDataType.STRING, names.toString());
+            entries.add(entry);
+        }
+
+        if (entries.isEmpty()) {
+            pdc.remove(getLinksKey());
+        } else {
+            pdc.set(getLinksKey(), PersistentDataType.TAG_CONTAINER_ARRAY, entries.toArray(new PersistentDataContainer[0]));
+        }
+        setLinked(chunk, !entries.isEmpty());
+    }
+
+    /**
+     * Moves any links of the given Chunk back into the Chests files.
+     * The Chests files are saved after a short delay rather than during the ChunkLoadEvent
+     *
+     * @param chunk The Chunk which was loaded
+     */
+    private static void restore(Chunk chunk) {
+        PersistentDataContainer pdc = chunk.getPersistentDataContainer();
+        PersistentDataContainer[] entries = pdc.get(getLinksKey(), PersistentDataType.TAG_CONTAINER_ARRAY);
+        setLinked(chunk, false);
+        if (entries == null) {
+            return;
+        }
+
+        for (PersistentDataContainer entry : entries) {
+            PhatLootChest chest = PhatLootChest.getChest(chunk.getWorld(), entry.get(xKey, PersistentDataType.INTEGER),
+                                                         entry.get(yKey, PersistentDataType.INTEGER),
+                                                         entry.get(zKey, PersistentDataType.INTEGER));
+            for (String name : entry.get(phatLootsKey, PersistentDataType.STRING).split("\n")) {
+                PhatLoot phatLoot = PhatLoots.getPhatLoot(name);
+                if (phatLoot != null) {
+                    phatLoot.addChest(chest);
+                    changedPhatLoots.add(name);
+                }
+            }
+        }
+        pdc.remove(linksKey);
+        queueSave();
+    }
+
+    private static NamespacedKey getLinksKey() {
+        if (linksKey == null) {
+            linksKey = new NamespacedKey(PhatLoots.plugin, "chest_links");
+            xKey = new NamespacedKey(PhatLoots.plugin, "x");
+            yKey = new NamespacedKey(PhatLoots.plugin, "y");
+            zKey = new NamespacedKey(PhatLoots.plugin, "z");
+            phatLootsKey = new NamespacedKey(PhatLoots.plugin, "phatloots");
+        }
+        return linksKey;
+    }
+}
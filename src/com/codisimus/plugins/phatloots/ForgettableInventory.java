@@ -1,63 +1,168 @@
 package com.codisimus.plugins.phatloots;
 
-import java.util.HashMap;
+import com.codisimus.plugins.phatloots.util.TimingWheel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.HumanEntity;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
 
 /**
- * A Forgettable Inventory is a virtual Inventory that will be removed from memory after the set delay
+ * A Forgettable Inventory is a virtual Inventory that will be removed from memory after the set delay.
+ * A single sweeper forgets expired Inventories each tick and the number of Inventories may be capped
+ * in which case the least recently used Inventory is forgotten first.
+ * While no Player has the Inventory open only its items and their slots are kept
  *
  * @author Mtihc, Codisimus
  */
-public class ForgettableInventory {
+public class ForgettableInventory implements InventoryHolder {
+    private static final int[] NO_SLOTS = new int[0];
+    private static final ItemStack[] NO_ITEMS = new ItemStack[0];
     static long delay;
-    private static final Map<String, ForgettableInventory> inventories = new HashMap<>(); //User+Chest Location -> Inventory
-    private Inventory inventory;
-    private final String key;
-    private BukkitTask task;
+    static int maxInventories; //The most Inventories which are kept in memory, 0 if there is no limit
+    private static final Map<Key, ForgettableInventory> inventories = new LinkedHashMap<>(16, 0.75F, true) { //User+Chest -> Inventory in order of last use
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ForgettableInventory> eldest) {
+            if (maxInventories <= 0 || size() <= maxInventories) {
+                return false;
+            }
+            if (!eldest.getValue().isOpen()) {
+                evicted++;
+                return true;
+            }
+
+            //Never forget an Inventory which a Player is looking at, forget the least recently used one which is closed
+            Iterator<ForgettableInventory> itr = values().iterator();
+            while (itr.hasNext()) {
+                if (!itr.next().isOpen()) {
+                    itr.remove();
+                    evicted++;
+                    break;
+                }
+            }
+            return false;
+        }
+    };
+    private static final TimingWheel<ForgettableInventory> expiries = new TimingWheel<>(1024);
+    private static final List<ForgettableInventory> expired = new ArrayList<>();
+    private static long expiredCount, evicted;
+    private Inventory inventory; //null unless the Inventory is open or being filled
+    private final Key key;
+    private final int size;
+    private final String title;
+    private int[] slots = NO_SLOTS; //Slots of the items while the Inventory is not open
+    private ItemStack[] items = NO_ITEMS;
+    private long deadline; //The tick of the sweeper at which the Inventory is forgotten
+
+    /**
+     * The owner of a ForgettableInventory
+     *
+     * @param user The UUID of the Player or LootTimes.GLOBAL
+     * @param chest The id of the PhatLootChest or -1 if the Inventory is not for a chest
+     */
+    public record Key(UUID user, int chest) {}
 
     /**
-     * Constructs a new ForgettableInventory with the given key and Inventory
+     * Constructs a new empty ForgettableInventory with the given key.
+     * The Inventory itself is not created until it is needed
      *
      * @param key The given key
-     * @param inventory The given Inventory
+     * @param size The size of the Inventory
+     * @param title The title of the Inventory
      */
-    public ForgettableInventory(String key, Inventory inventory) {
+    public ForgettableInventory(Key key, int size, String title) {
         this.key = key;
-        this.inventory = inventory;
+        this.size = size;
+        this.title = title;
     }
 
     /**
-     * Schedules this ForgettableInventory to be forgotten
+     * Schedules this ForgettableInventory to be forgotten.
+     * Any previous schedule is replaced
      */
     public void schedule() {
         inventories.put(key, this);
-        if (task != null) {
-            task.cancel();
-        }
-        task = Bukkit.getScheduler().runTaskLater(PhatLoots.plugin,
-                () -> inventories.remove(key), delay);
+        deadline = expiries.schedule(this, delay);
     }
 
     /**
-     * Gets the Inventory of this ForgettableInventory
+     * Gets the Inventory of this ForgettableInventory.
+     * The Inventory is created from the kept items if it does not currently exist
      *
      * @return The Inventory
      */
+    @Override
     public Inventory getInventory() {
+        if (inventory == null) {
+            inventory = Bukkit.createInventory(this, size, title);
+            for (int i = 0; i < slots.length; i++) {
+                inventory.setItem(slots[i], items[i]);
+            }
+            slots = NO_SLOTS;
+            items = NO_ITEMS;
+        }
         return inventory;
     }
 
+    /**
+     * Returns true if a Player is looking at the Inventory
+     *
+     * @return true if the Inventory has viewers
+     */
+    public boolean isOpen() {
+        return inventory != null && !inventory.getViewers().isEmpty();
+    }
+
+    /**
+     * Releases the Inventory once its last viewer closes it.
+     * Only the items and their slots are kept until the Inventory is needed again
+     *
+     * @param closing The Player who is closing the Inventory
+     */
+    public void release(HumanEntity closing) {
+        if (inventory == null) {
+            return;
+        }
+        for (HumanEntity viewer : inventory.getViewers()) {
+            if (viewer != closing) {
+                return;
+            }
+        }
+
+        ItemStack[] contents = inventory.getContents();
+        int count = 0;
+        for (ItemStack item : contents) {
+            if (item != null && item.getType() != Material.AIR) {
+                count++;
+            }
+        }
+        slots = count == 0 ? NO_SLOTS : new int[count];
+        items = count == 0 ? NO_ITEMS : new ItemStack[count];
+        count = 0;
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] != null && contents[i].getType() != Material.AIR) {
+                slots[count] = i;
+                items[count++] = contents[i];
+            }
+        }
+        inventory = null;
+    }
+
     /**
      * Returns the ForgettableInventory of the given key
      *
      * @param key The given key
      * @return The ForgettableInventory of the given key
      */
-    public static ForgettableInventory get(String key) {
+    public static ForgettableInventory get(Key key) {
         return inventories.get(key);
     }
 
@@ -67,7 +172,56 @@ public class ForgettableInventory {
      * @param key The given key
      * @return true if there is a Inventory for the given key
      */
-    public static boolean has(String key) {
+    public static boolean has(Key key) {
         return inventories.containsKey(key);
     }
+
+    /**
+     * Returns the number of Inventories which are in memory
+     *
+     * @return The number of ForgettableInventories
+     */
+    public static int size() {
+        return inventories.size();
+    }
+
+    /**
+     * Returns the number of Inventories which have been forgotten because their time ran out
+     *
+     * @return The number of expired Inventories
+     */
+    public static long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Returns the number of Inventories which have been forgotten to stay within MaxInventories
+     *
+     * @return The number of evicted Inventories
+     */
+    public static long getEvictedCount() {
+        return evicted;
+    }
+
+    /**
+     * Starts the sweeper which forgets expired Inventories each tick
+     */
+    static void start() {
+        Bukkit.getScheduler().runTaskTimer(PhatLoots.plugin, ForgettableInventory::sweep, 1L, 1L);
+    }
+
+    /**
+     * Forgets each Inventory whose time has run out.
+     * Inventories which were scheduled again since are skipped
+     */
+    private static void sweep() {
+        expiries.advance(expired);
+        for (ForgettableInventory fInventory : expired) {
+            if (fInventory.deadline == expiries.getTick() && inventories.get(fInventory.key) == fInventory) {
+                inventories.remove(fInventory.key);
+                expiredCount++;
+            }
+        }
+        expired.clear();
+    }
 }
@@ -0,0 +1,381 @@
+package com.codisimus.plugins.phatloots;
+
+import com.codisimus.plugins.phatloots.loot.CommandLoot;
+import com.codisimus.plugins.phatloots.loot.Loot;
+import com.codisimus.plugins.phatloots.loot.LootBundle;
+import com.codisimus.plugins.phatloots.loot.LootPlan;
+import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
+import com.codisimus.plugins.phatloots.util.RandomSource;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Rolls for a PhatLoot many times on a ForkJoinPool and summarizes the loot of each roll.
+ * The rolls use the same LootPlan as live loot but the main thread is only used to report the results.
+ * External Loot (which calls into another plugin or reads files) is only counted since it is not safe to generate off the main thread
+ *
+ * @author Codisimus
+ */
+public class LootSimulation {
+    private static final int ROLLS_PER_TASK = 65536;
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static ForkJoinPool pool;
+
+    /**
+     * A count of how many rolls gave each amount.
+     * Rolls which gave nothing are not recorded and are counted from the total number of rolls instead
+     */
+    private static class Counts {
+        private final HashMap<Long, long[]> counts = new HashMap<>(); //Amount -> Number of rolls
+        private long recorded;
+
+        private void add(long amount) {
+            if (amount != 0) {
+                counts.computeIfAbsent(amount, key -> new long[1])[0]++;
+                recorded++;
+            }
+        }
+
+        private void merge(Counts other) {
+            for (Map.Entry<Long, long[]> entry : other.counts.entrySet()) {
+                counts.computeIfAbsent(entry.getKey(), key -> new long[1])[0] += entry.getValue()[0];
+            }
+            recorded += other.recorded;
+        }
+
+        /**
+         * Returns the amount at each of the PERCENTILES
+         *
+         * @param rolls The total number of rolls including those which gave nothing
+         * @return The nearest rank amount of each percentile
+         */
+        private long[] percentiles(long rolls) {
+            TreeMap<Long, Long> sorted = new TreeMap<>();
+            for (Map.Entry<Long, long[]> entry : counts.entrySet()) {
+                sorted.put(entry.getKey(), entry.getValue()[0]);
+            }
+            sorted.merge(0L, rolls - recorded, Long::sum);
+
+            long[] amounts = new long[PERCENTILES.length];
+            int i = 0;
+            long seen = 0;
+            for (Map.Entry<Long, Long> entry : sorted.entrySet()) {
+                seen += entry.getValue();
+                while (i < amounts.length && seen >= Math.max(1, (long) Math.ceil(PERCENTILES[i] * rolls))) {
+                    amounts[i++] = entry.getKey();
+                }
+            }
+            return amounts;
+        }
+    }
+
+    /**
+     * The totals of every roll of a simulation or a part of one
+     */
+    private static class Stats {
+        private final HashMap<ItemStack, ItemStats> items = new HashMap<>(); //Prototype -> Stats
+        private final IdentityHashMap<CommandLoot, long[]> commands = new IdentityHashMap<>(); //CommandLoot -> Number of rolls
+        private final IdentityHashMap<Loot, long[]> external = new IdentityHashMap<>(); //External Loot -> Number of rolls
+        private final Counts money = new Counts();
+        private final Counts exp = new Counts();
+        private double totalMoney;
+        private long totalExp;
+
+        private void merge(Stats other) {
+            for (Map.Entry<ItemStack, ItemStats> entry : other.items.entrySet()) {
+                ItemStats stats = items.get(entry.getKey());
+                if (stats == null) {
+                    items.put(entry.getKey(), entry.getValue());
+                } else {
+                    stats.merge(entry.getValue());
+                }
+            }
+            for (Map.Entry<CommandLoot, long[]> entry : other.commands.entrySet()) {
+                commands.computeIfAbsent(entry.getKey(), key -> new long[1])[0] += entry.getValue()[0];
+            }
+            for (Map.Entry<Loot, long[]> entry : other.external.entrySet()) {
+                external.computeIfAbsent(entry.getKey(), key -> new long[1])[0] += entry.getValue()[0];
+            }
+            money.merge(other.money);
+            exp.merge(other.exp);
+            totalMoney += other.totalMoney;
+            totalExp += other.totalExp;
+        }
+    }
+
+    /**
+     * The totals of a single item
+     */
+    private static class ItemStats {
+        private final Counts amounts = new Counts();
+        private long total;
+
+        private void merge(ItemStats other) {
+            amounts.merge(other.amounts);
+            total += other.total;
+        }
+    }
+
+    /**
+     * A LootBundle which is reused for each roll and adds its loot to the Stats at the end of the roll
+     */
+    private static class RollBundle extends LootBundle {
+        private final HashMap<ItemStack, long[]> items = new HashMap<>(); //Prototype -> Amount this roll
+        private final Set<CommandLoot> commands = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<Loot> external = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private RollBundle() {
+            super(Collections.emptyList());
+        }
+
+        @Override
+        public void addItem(ItemStack item) {
+            ItemStack prototype = item;
+            if (item.getAmount() != 1) {
+                prototype = item.clone();
+                prototype.setAmount(1);
+            }
+            items.computeIfAbsent(prototype, key -> new long[1])[0] += item.getAmount();
+        }
+
+        @Override
+        public void addCommand(CommandLoot command) {
+            commands.add(command);
+        }
+
+        @Override
+        public void addMessage(String msg) {
+        }
+
+        @Override
+        public void addExternalLoot(Loot loot, double lootingBonus) {
+            external.add(loot);
+        }
+
+        /**
+         * Adds the loot of this roll to the given Stats and clears it for the next roll
+         *
+         * @param stats The Stats of the simulation
+         */
+        private void endRoll(Stats stats) {
+            for (Map.Entry<ItemStack, long[]> entry : items.entrySet()) {
+                ItemStats itemStats = stats.items.get(entry.getKey());
+                if (itemStats == null) {
+                    //Never keep the looted item itself since it may be shared
+                    itemStats = new ItemStats();
+                    stats.items.put(entry.getKey().clone(), itemStats);
+                }
+                itemStats.amounts.add(entry.getValue()[0]);
+                itemStats.total += entry.getValue()[0];
+            }
+            for (CommandLoot command : commands) {
+                stats.commands.computeIfAbsent(command, key -> new long[1])[0]++;
+            }
+            for (Loot loot : external) {
+                stats.external.computeIfAbsent(loot, key -> new long[1])[0]++;
+            }
+            stats.money.add(Math.round(getMoney()));
+            stats.exp.add(getExp());
+            stats.totalMoney += getMoney();
+            stats.totalExp += getExp();
+
+            items.clear();
+            commands.clear();
+            external.clear();
+            setMoney(0);
+            setExp(0);
+        }
+    }
+
+    /**
+     * Rolls for a range of tasks, splitting the range in half until a single task remains
+     */
+    private static class Task extends RecursiveTask<Stats> {
+        private final LootPlan plan;
+        private final double lootingBonus;
+        private final int rolls;
+        private final RandomSource[] sources; //The RandomSource of each task or null to use the default
+        private final int from;
+        private final int to;
+
+        private Task(LootPlan plan, double lootingBonus, int rolls, RandomSource[] sources, int from, int to) {
+            this.plan = plan;
+            this.lootingBonus = lootingBonus;
+            this.rolls = rolls;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                Task left = new Task(plan, lootingBonus, rolls, sources, from, mid);
+                left.fork();
+                Stats stats = new Task(plan, lootingBonus, rolls, sources, mid, to).compute();
+                stats.merge(left.join());
+                return stats;
+            }
+
+            return sources == null
+                   ? roll()
+                   : PhatLootsUtil.withRandomSource(sources[from], this::roll);
+        }
+
+        private Stats roll() {
+            Stats stats = new Stats();
+            RollBundle bundle = new RollBundle();
+            int count = Math.min(ROLLS_PER_TASK, rolls - from * ROLLS_PER_TASK);
+            for (int i = 0; i < count; i++) {
+                plan.rollForLoot(bundle, lootingBonus);
+                bundle.endRoll(stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Starts simulating the given number of rolls for the given PhatLoot.
+     * Only one simulation may run at a time
+     *
+     * @param phatLoot The PhatLoot to roll for
+     * @param rolls The number of rolls
+     * @param lootingBonus The increased chance of getting rarer loots
+     * @param callback Receives the lines of the report on the main thread
+     * @return false if a simulation is already running
+     */
+    public static boolean start(PhatLoot phatLoot, int rolls, double lootingBonus, Consumer<List<String>> callback) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        //Split a reproducible stream off for each task if rolls are seeded
+        //The streams come from a restarted copy so that live loot is not affected by simulations
+        int tasks = (int) ((rolls + (long) ROLLS_PER_TASK - 1) / ROLLS_PER_TASK);
+        RandomSource[] sources = null;
+        if (PhatLootsUtil.getRandom() instanceof RandomSource.Seeded seeded) {
+            RandomSource.Seeded root = seeded.restart();
+            sources = new RandomSource[tasks];
+            for (int i = 0; i < tasks; i++) {
+                sources[i] = root.split();
+            }
+        }
+
+        Task task = new Task(phatLoot.getLootPlan(), lootingBonus, rolls, sources, 0, tasks);
+        String name = phatLoot.name;
+        CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            Stats stats = task.invoke();
+            return report(name, rolls, lootingBonus, stats, System.nanoTime() - start);
+        }, getPool()).whenComplete((lines, ex) -> {
+            running.set(false);
+            if (ex != null) {
+                PhatLoots.logger.log(Level.SEVERE, "Failed to simulate PhatLoot " + name, ex);
+                lines = Collections.singletonList("§4The simulation failed, see the console for details");
+            }
+            if (PhatLoots.plugin.isEnabled()) {
+                List<String> result = lines;
+                Bukkit.getScheduler().runTask(PhatLoots.plugin, () -> callback.accept(result));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Returns the lines which describe the results of a simulation
+     *
+     * @param name The name of the PhatLoot
+     * @param rolls The number of rolls
+     * @param lootingBonus The looting bonus of each roll
+     * @param stats The totals of every roll
+     * @param nanos How long the rolls took
+     * @return The report
+     */
+    private static List<String> report(String name, int rolls, double lootingBonus, Stats stats, long nanos) {
+        List<String> lines = new ArrayList<>();
+        double seconds = nanos / 1e9;
+        lines.add("§5Simulated §6" + rolls + "§5 rolls of §6" + name
+                  + (lootingBonus == 0 ? "" : "§5 with a looting bonus of §6" + lootingBonus)
+                  + "§5 in §6" + String.format("%.2f", seconds) + "§5s (§6"
+                  + String.format("%.0f", rolls / Math.max(seconds, 1e-9)) + "§5 rolls per second)");
+        lines.add(describe("Money", stats.money, stats.totalMoney, rolls));
+        lines.add(describe("Exp", stats.exp, stats.totalExp, rolls));
+
+        //List the most common items first
+        List<Map.Entry<ItemStack, ItemStats>> items = new ArrayList<>(stats.items.entrySet());
+        items.sort(Comparator.comparingLong(entry -> -entry.getValue().amounts.recorded));
+        for (Map.Entry<ItemStack, ItemStats> entry : items) {
+            ItemStats itemStats = entry.getValue();
+            lines.add(describe(PhatLootsUtil.getItemName(entry.getKey()), itemStats.amounts, itemStats.total, rolls));
+        }
+
+        for (Map.Entry<CommandLoot, long[]> entry : stats.commands.entrySet()) {
+            lines.add("§6/" + entry.getKey().command + "§5: §6" + percent(entry.getValue()[0], rolls) + "§5 of rolls");
+        }
+
+        for (Map.Entry<Loot, long[]> entry : stats.external.entrySet()) {
+            lines.add("§6" + entry.getKey() + "§5: §6" + percent(entry.getValue()[0], rolls)
+                      + "§5 of rolls (not generated by simulations)");
+        }
+        return lines;
+    }
+
+    /**
+     * Returns a line which describes the distribution of an amount
+     *
+     * @param label What the amount is of
+     * @param counts The number of rolls which gave each amount
+     * @param total The sum of the amount from every roll
+     * @param rolls The number of rolls
+     * @return The description of the amount
+     */
+    private static String describe(String label, Counts counts, double total, int rolls) {
+        long[] percentiles = counts.percentiles(rolls);
+        return "§6" + label + "§5: §6" + percent(counts.recorded, rolls) + "§5 of rolls, mean §6"
+               + String.format("%.2f", total / rolls) + "§5, p50 §6" + percentiles[0]
+               + "§5, p90 §6" + percentiles[1] + "§5, p99 §6" + percentiles[2];
+    }
+
+    private static String percent(long count, int rolls) {
+        return String.format("%.3f%%", count * 100.0 / rolls);
+    }
+
+    /**
+     * Returns the ForkJoinPool which simulations run on.
+     * One processor is left for the server
+     *
+     * @return The ForkJoinPool
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("PhatLoots Simulation " + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * Stops any simulation which is running
+     */
+    static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+        running.set(false);
+    }
+}
@@ -0,0 +1,830 @@
+package com.codisimus.plugins.phatloots;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * LootTimes is a table of the times at which users looted a PhatLoot.
+ * Each entry is keyed by the id of a PhatLootChest and the two halves of the user's UUID.
+ * Entries are kept in parallel primitive arrays using open addressing so that lookups do not allocate.
+ * A min-heap ordered by time is kept alongside the table so that the oldest times can be removed without a full scan.
+ * The entries of each chest and of each user are also linked together so that they can be reset without a full scan
+ *
+ * @author Codisimus
+ */
+public final class LootTimes {
+    public static final int NO_CHEST = -1; //Chest id of loot which was not given by a PhatLootChest
+    public static final long NOT_FOUND = Long.MIN_VALUE; //Returned when there is no time for a key
+    public static final UUID GLOBAL = new UUID(0, 0); //User of global PhatLoots
+    private static final int EMPTY = -2; //Chest id of a slot which has never been used
+    private static final int REMOVED = -3; //Chest id of a slot whose entry has been removed
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] chests;
+    private long[] mostBits;
+    private long[] leastBits;
+    private long[] times;
+    private int[] chestNext; //Slot -> Next slot of the same chest
+    private int[] chestPrev; //Slot -> Previous slot of the same chest
+    private int[] userNext; //Slot -> Next slot of the same user
+    private int[] userPrev; //Slot -> Previous slot of the same user
+    private ChestIndex chestHeads; //Chest id -> First slot of the chest
+    private UserIndex userHeads; //User -> First slot of the user
+    private ExpiryQueue queue;
+    private int size; //The number of entries
+    private int used; //The number of slots which are not EMPTY
+    private Observer observer; //Notified of changes to slots, may be null
+
+    /**
+     * Constructs a new, empty LootTimes table
+     */
+    public LootTimes() {
+        clear();
+    }
+
+    /**
+     * Returns the time for the given chest and user
+     *
+     * @param chest The id of the PhatLootChest or NO_CHEST
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @return The time that was stored or NOT_FOUND if there is none
+     */
+    public long get(int chest, long most, long least) {
+        int slot = find(chest, most, least);
+        return slot < 0 ? NOT_FOUND : times[slot];
+    }
+
+    /**
+     * Returns a copy of this table which is not affected by later changes
+     *
+     * @return The copy of the LootTimes
+     */
+    public LootTimes copy() {
+        LootTimes copy = new LootTimes();
+        copy.chests = chests.clone();
+        copy.mostBits = mostBits.clone();
+        copy.leastBits = leastBits.clone();
+        copy.times = times.clone();
+        copy.chestNext = chestNext.clone();
+        copy.chestPrev = chestPrev.clone();
+        copy.userNext = userNext.clone();
+        copy.userPrev = userPrev.clone();
+        copy.chestHeads = chestHeads.copy();
+        copy.userHeads = userHeads.copy();
+        copy.queue = queue.copy();
+        copy.size = size;
+        copy.used = used;
+        return copy;
+    }
+
+    /**
+     * Stores the time for the given chest and user
+     *
+     * @param chest The id of the PhatLootChest or NO_CHEST
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @param time The time to store
+     */
+    public void put(int chest, long most, long least, long time) {
+        //Drop the stale entries of the queue once they outnumber the entries of the table
+        if (queue.size > size * 2 + MIN_CAPACITY) {
+            rebuildQueue();
+        }
+        queue.add(chest, most, least, time);
+
+        int slot = find(chest, most, least);
+        if (slot >= 0) {
+            times[slot] = time;
+            if (observer != null) {
+                observer.slotWritten(slot);
+            }
+            return;
+        }
+
+        //Grow or compact the table before a new slot is used
+        if ((used + 1) * 4 > chests.length * 3) {
+            rehash(size * 2 >= chests.length ? chests.length * 2 : chests.length);
+        }
+
+        int mask = chests.length - 1;
+        int free = -1;
+        slot = hash(chest, most, least) & mask;
+        while (chests[slot] != EMPTY) {
+            if (free < 0 && chests[slot] == REMOVED) {
+                free = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (free < 0) {
+            free = slot;
+            used++;
+        }
+        chests[free] = chest;
+        mostBits[free] = most;
+        leastBits[free] = least;
+        times[free] = time;
+        link(free);
+        size++;
+        if (observer != null) {
+            observer.slotWritten(free);
+        }
+    }
+
+    /**
+     * Removes the time for the given chest and user
+     *
+     * @param chest The id of the PhatLootChest or NO_CHEST
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @return true if a time was removed
+     */
+    public boolean remove(int chest, long most, long least) {
+        int slot = find(chest, most, least);
+        if (slot < 0) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Removes every time of the given chest
+     *
+     * @param chest The id of the PhatLootChest or NO_CHEST
+     * @return The number of times that were removed
+     */
+    public int removeChest(int chest) {
+        int removed = 0;
+        int slot = chestHead(chest);
+        while (slot >= 0) {
+            int next = chestNext[slot];
+            removeSlot(slot);
+            removed++;
+            slot = next;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every time of the given user
+     *
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @return The number of times that were removed
+     */
+    public int removeUser(long most, long least) {
+        int removed = 0;
+        int slot = userHeads.get(most, least);
+        while (slot >= 0) {
+            int next = userNext[slot];
+            removeSlot(slot);
+            removed++;
+            slot = next;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every time of the given chest that is older than the given time
+     *
+     * @param chest The id of the PhatLootChest or NO_CHEST
+     * @param time Times before this are removed
+     * @return The number of times that were removed
+     */
+    public int removeOlderThan(int chest, long time) {
+        int removed = 0;
+        int slot = chestHead(chest);
+        while (slot >= 0) {
+            int next = chestNext[slot];
+            if (times[slot] < time) {
+                removeSlot(slot);
+                removed++;
+            }
+            slot = next;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes up to the given amount of times that are older than the given time.
+     * Only the oldest times are looked at so this does not scan the whole table
+     *
+     * @param time Times before this are removed
+     * @param max The maximum amount of times to remove
+     * @return The number of times that were removed
+     */
+    public int removeExpired(long time, int max) {
+        int removed = 0;
+        while (removed < max && queue.size > 0 && queue.times[0] < time) {
+            int chest = queue.chests[0];
+            long most = queue.mostBits[0];
+            long least = queue.leastBits[0];
+            long queued = queue.times[0];
+            queue.poll();
+
+            //Entries of the queue are not removed with the table so check that the time is still current
+            int slot = find(chest, most, least);
+            if (slot >= 0 && times[slot] == queued) {
+                removeSlot(slot);
+                removed++;
+            }
+        }
+
+        //Drop the stale entries of the queue once they outnumber the entries of the table
+        if (queue.size > size * 2 + MIN_CAPACITY) {
+            rebuildQueue();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all times
+     */
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        chestHeads = new ChestIndex();
+        userHeads = new UserIndex();
+        queue = new ExpiryQueue();
+        if (observer != null) {
+            observer.rehashed();
+        }
+    }
+
+    /**
+     * Sets the Observer which is notified whenever a slot of the table changes.
+     * The Observer is not carried over to copies of the table
+     *
+     * @param observer The Observer or null to stop notifying
+     */
+    public void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Returns the number of times in the table
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the oldest time which is queued to expire.
+     * The time may belong to an entry which has since been updated or removed so it is never newer than the oldest time
+     *
+     * @return The oldest queued time or NOT_FOUND if the table is empty
+     */
+    public long oldestTime() {
+        return queue.size > 0 ? queue.times[0] : NOT_FOUND;
+    }
+
+    /**
+     * Returns true if there are no times in the table
+     *
+     * @return true if the table is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Slot Access (used to iterate over the table without allocating) **/
+
+    /**
+     * Returns the number of slots in the table
+     *
+     * @return The capacity of the table
+     */
+    public int capacity() {
+        return chests.length;
+    }
+
+    /**
+     * Returns true if the given slot holds an entry
+     *
+     * @param slot The index of the slot
+     * @return true if there is an entry at the slot
+     */
+    public boolean isUsed(int slot) {
+        return chests[slot] >= NO_CHEST;
+    }
+
+    /**
+     * Returns the chest id of the entry at the given slot
+     *
+     * @param slot The index of a used slot
+     * @return The id of the PhatLootChest or NO_CHEST
+     */
+    public int chestAt(int slot) {
+        return chests[slot];
+    }
+
+    /**
+     * Returns the most significant bits of the user of the entry at the given slot
+     *
+     * @param slot The index of a used slot
+     * @return The most significant bits of the user's UUID
+     */
+    public long mostBitsAt(int slot) {
+        return mostBits[slot];
+    }
+
+    /**
+     * Returns the least significant bits of the user of the entry at the given slot
+     *
+     * @param slot The index of a used slot
+     * @return The least significant bits of the user's UUID
+     */
+    public long leastBitsAt(int slot) {
+        return leastBits[slot];
+    }
+
+    /**
+     * Returns the time of the entry at the given slot
+     *
+     * @param slot The index of a used slot
+     * @return The time that was stored
+     */
+    public long timeAt(int slot) {
+        return times[slot];
+    }
+
+    /**
+     * Returns the slot of the first entry of the given user.
+     * The other entries of the user are found with nextSlotOfUser
+     *
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @return The index of the slot or -1 if the user has no entries
+     */
+    public int firstSlotOfUser(long most, long least) {
+        return userHeads.get(most, least);
+    }
+
+    /**
+     * Returns the slot of the next entry of the same user as the entry at the given slot
+     *
+     * @param slot The index of a used slot
+     * @return The index of the next slot or -1 if there are no more entries of the user
+     */
+    public int nextSlotOfUser(int slot) {
+        return userNext[slot];
+    }
+
+    /** Internal Methods **/
+
+    private int find(int chest, long most, long least) {
+        int mask = chests.length - 1;
+        int slot = hash(chest, most, least) & mask;
+        int c;
+        while ((c = chests[slot]) != EMPTY) {
+            if (c == chest && mostBits[slot] == most && leastBits[slot] == least) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) {
+        unlink(slot);
+        chests[slot] = REMOVED;
+        size--;
+        if (observer != null) {
+            observer.slotRemoved(slot);
+        }
+    }
+
+    private int chestHead(int chest) {
+        return chestHeads.get(chest);
+    }
+
+    private void link(int slot) {
+        int head = chestHeads.get(chests[slot]);
+        chestNext[slot] = head;
+        chestPrev[slot] = -1;
+        if (head >= 0) {
+            chestPrev[head] = slot;
+        }
+        chestHeads.put(chests[slot], slot);
+
+        head = userHeads.get(mostBits[slot], leastBits[slot]);
+        userNext[slot] = head;
+        userPrev[slot] = -1;
+        if (head >= 0) {
+            userPrev[head] = slot;
+        }
+        userHeads.put(mostBits[slot], leastBits[slot], slot);
+    }
+
+    private void unlink(int slot) {
+        int prev = chestPrev[slot];
+        int next = chestNext[slot];
+        if (prev >= 0) {
+            chestNext[prev] = next;
+        } else if (next >= 0) {
+            chestHeads.put(chests[slot], next);
+        } else {
+            chestHeads.remove(chests[slot]);
+        }
+        if (next >= 0) {
+            chestPrev[next] = prev;
+        }
+
+        prev = userPrev[slot];
+        next = userNext[slot];
+        if (prev >= 0) {
+            userNext[prev] = next;
+        } else if (next >= 0) {
+            userHeads.put(mostBits[slot], leastBits[slot], next);
+        } else {
+            userHeads.remove(mostBits[slot], leastBits[slot]);
+        }
+        if (next >= 0) {
+            userPrev[next] = prev;
+        }
+    }
+
+    private void allocate(int capacity) {
+        chests = new int[capacity];
+        Arrays.fill(chests, EMPTY);
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        times = new long[capacity];
+        chestNext = new int[capacity];
+        chestPrev = new int[capacity];
+        userNext = new int[capacity];
+        userPrev = new int[capacity];
+        size = 0;
+        used = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldChests = chests;
+        long[] oldMostBits = mostBits;
+        long[] oldLeastBits = leastBits;
+        long[] oldTimes = times;
+
+        allocate(capacity);
+        chestHeads = new ChestIndex();
+        userHeads = new UserIndex();
+        int mask = capacity - 1;
+        for (int i = 0; i < oldChests.length; i++) {
+            if (oldChests[i] >= NO_CHEST) {
+                int slot = hash(oldChests[i], oldMostBits[i], oldLeastBits[i]) & mask;
+                while (chests[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                chests[slot] = oldChests[i];
+                mostBits[slot] = oldMostBits[i];
+                leastBits[slot] = oldLeastBits[i];
+                times[slot] = oldTimes[i];
+                link(slot);
+                size++;
+                used++;
+            }
+        }
+        if (observer != null) {
+            observer.rehashed();
+        }
+    }
+
+    private void rebuildQueue() {
+        queue = new ExpiryQueue();
+        for (int slot = 0; slot < chests.length; slot++) {
+            if (chests[slot] >= NO_CHEST) {
+                queue.append(chests[slot], mostBits[slot], leastBits[slot], times[slot]);
+            }
+        }
+        queue.heapify();
+    }
+
+    private static int[] filled(int capacity) {
+        int[] array = new int[capacity];
+        Arrays.fill(array, -1);
+        return array;
+    }
+
+    private static int hash(int chest, long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least ^ (chest * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * An Observer is notified of each change to the slots of a LootTimes table
+     */
+    public interface Observer {
+        /**
+         * Called after the entry at the given slot was added or its time was changed
+         *
+         * @param slot The index of the slot
+         */
+        void slotWritten(int slot);
+
+        /**
+         * Called after the entry at the given slot was removed
+         *
+         * @param slot The index of the slot
+         */
+        void slotRemoved(int slot);
+
+        /**
+         * Called after the entries have been moved to different slots or all entries have been removed
+         */
+        void rehashed();
+    }
+
+    /**
+     * An open addressing map of user UUIDs to the first slot of the user in the table
+     */
+    private static final class UserIndex {
+        private long[] mostBits = new long[MIN_CAPACITY];
+        private long[] leastBits = new long[MIN_CAPACITY];
+        private int[] heads = filled(MIN_CAPACITY); //-1 if the slot of the index is empty
+        private int size;
+
+        private int get(long most, long least) {
+            int mask = heads.length - 1;
+            int i = hash(0, most, least) & mask;
+            while (heads[i] >= 0) {
+                if (mostBits[i] == most && leastBits[i] == least) {
+                    return heads[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(long most, long least, int head) {
+            if ((size + 1) * 4 > heads.length * 3) {
+                resize(heads.length * 2);
+            }
+            int mask = heads.length - 1;
+            int i = hash(0, most, least) & mask;
+            while (heads[i] >= 0) {
+                if (mostBits[i] == most && leastBits[i] == least) {
+                    heads[i] = head;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            mostBits[i] = most;
+            leastBits[i] = least;
+            heads[i] = head;
+            size++;
+        }
+
+        private void remove(long most, long least) {
+            int mask = heads.length - 1;
+            int i = hash(0, most, least) & mask;
+            while (mostBits[i] != most || leastBits[i] != least) {
+                if (heads[i] < 0) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            if (heads[i] < 0) {
+                return; //Only the bits of a removed user were left in this slot
+            }
+            heads[i] = -1;
+            size--;
+
+            //Shift back the following entries so that no lookup stops at the emptied slot
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (heads[j] < 0) {
+                    return;
+                }
+                int home = hash(0, mostBits[j], leastBits[j]) & mask;
+                if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                    continue;
+                }
+                mostBits[i] = mostBits[j];
+                leastBits[i] = leastBits[j];
+                heads[i] = heads[j];
+                heads[j] = -1;
+                i = j;
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldMostBits = mostBits;
+            long[] oldLeastBits = leastBits;
+            int[] oldHeads = heads;
+            mostBits = new long[capacity];
+            leastBits = new long[capacity];
+            heads = filled(capacity);
+            size = 0;
+            for (int i = 0; i < oldHeads.length; i++) {
+                if (oldHeads[i] >= 0) {
+                    put(oldMostBits[i], oldLeastBits[i], oldHeads[i]);
+                }
+            }
+        }
+
+        private UserIndex copy() {
+            UserIndex copy = new UserIndex();
+            copy.mostBits = mostBits.clone();
+            copy.leastBits = leastBits.clone();
+            copy.heads = heads.clone();
+            copy.size = size;
+            return copy;
+        }
+    }
+
+    /**
+     * An open addressing map of chest ids to the first slot of the chest in the table.
+     * Only chests which have times in the table are kept so the index does not grow with the ids of every chest
+     */
+    private static final class ChestIndex {
+        private int[] chests = new int[MIN_CAPACITY];
+        private int[] heads = filled(MIN_CAPACITY); //-1 if the slot of the index is empty
+        private int size;
+
+        private int get(int chest) {
+            int mask = heads.length - 1;
+            int i = hash(chest, 0, 0) & mask;
+            while (heads[i] >= 0) {
+                if (chests[i] == chest) {
+                    return heads[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(int chest, int head) {
+            if ((size + 1) * 4 > heads.length * 3) {
+                resize(heads.length * 2);
+            }
+            int mask = heads.length - 1;
+            int i = hash(chest, 0, 0) & mask;
+            while (heads[i] >= 0) {
+                if (chests[i] == chest) {
+                    heads[i] = head;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            chests[i] = chest;
+            heads[i] = head;
+            size++;
+        }
+
+        private void remove(int chest) {
+            int mask = heads.length - 1;
+            int i = hash(chest, 0, 0) & mask;
+            while (heads[i] >= 0 && chests[i] != chest) {
+                i = (i + 1) & mask;
+            }
+            if (heads[i] < 0) {
+                return;
+            }
+            heads[i] = -1;
+            size--;
+
+            //Shift back the following entries so that no lookup stops at the emptied slot
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (heads[j] < 0) {
+                    return;
+                }
+                int home = hash(chests[j], 0, 0) & mask;
+                if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                    continue;
+                }
+                chests[i] = chests[j];
+                heads[i] = heads[j];
+                heads[j] = -1;
+                i = j;
+            }
+        }
+
+        private void resize(int capacity) {
+            int[] oldChests = chests;
+            int[] oldHeads = heads;
+            chests = new int[capacity];
+            heads = filled(capacity);
+            size = 0;
+            for (int i = 0; i < oldHeads.length; i++) {
+                if (oldHeads[i] >= 0) {
+                    put(oldChests[i], oldHeads[i]);
+                }
+            }
+        }
+
+        private ChestIndex copy() {
+            ChestIndex copy = new ChestIndex();
+            copy.chests = chests.clone();
+            copy.heads = heads.clone();
+            copy.size = size;
+            return copy;
+        }
+    }
+
+    /**
+     * A binary min-heap of times along with the keys that they were stored for
+     */
+    private static final class ExpiryQueue {
+        private int[] chests = new int[MIN_CAPACITY];
+        private long[] mostBits = new long[MIN_CAPACITY];
+        private long[] leastBits = new long[MIN_CAPACITY];
+        private long[] times = new long[MIN_CAPACITY];
+        private int size;
+
+        private void add(int chest, long most, long least, long time) {
+            append(chest, most, least, time);
+            siftUp(size - 1);
+        }
+
+        private void append(int chest, long most, long least, long time) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                chests = Arrays.copyOf(chests, capacity);
+                mostBits = Arrays.copyOf(mostBits, capacity);
+                leastBits = Arrays.copyOf(leastBits, capacity);
+                times = Arrays.copyOf(times, capacity);
+            }
+            chests[size] = chest;
+            mostBits[size] = most;
+            leastBits[size] = least;
+            times[size] = time;
+            size++;
+        }
+
+        private ExpiryQueue copy() {
+            ExpiryQueue copy = new ExpiryQueue();
+            copy.chests = chests.clone();
+            copy.mostBits = mostBits.clone();
+            copy.leastBits = leastBits.clone();
+            copy.times = times.clone();
+            copy.size = size;
+            return copy;
+        }
+
+        private void poll() {
+            size--;
+            if (size > 0) {
+                move(size, 0);
+                siftDown(0);
+            }
+        }
+
+        private void heapify() {
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (times[parent] <= times[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            int half = size >>> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                if (child + 1 < size && times[child + 1] < times[child]) {
+                    child++;
+                }
+                if (times[i] <= times[child]) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void move(int from, int to) {
+            chests[to] = chests[from];
+            mostBits[to] = mostBits[from];
+            leastBits[to] = leastBits[from];
+            times[to] = times[from];
+        }
+
+        private void swap(int a, int b) {
+            int chest = chests[a];
+            long most = mostBits[a];
+            long least = leastBits[a];
+            long time = times[a];
+            move(b, a);
+            chests[b] = chest;
+            mostBits[b] = most;
+            leastBits[b] = least;
+            times[b] = time;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.codisimus.plugins.phatloots;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+
+/**
+ * A LootTimesFile is a memory mapped binary copy of a LootTimes table.
+ * The file holds one fixed width record for each slot of the table so that changes are written in place.
+ * Chests are saved as references to the lines of a separate .chests file which holds their locations.
+ * Records are written in place on the main thread while whole files are written by the save thread
+ *
+ * @author Codisimus
+ */
+public class LootTimesFile implements LootTimes.Observer {
+    public static final String EXTENSION = ".dat";
+    public static final String CHESTS_EXTENSION = ".chests";
+    private static final int MAGIC = 0x504C4C54; //PLLT
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; //Magic, Version, Capacity, Unresolved Count
+    private static final int RECORD_SIZE = 28; //Chest Ref, Most Bits, Least Bits, Time
+    private static final int NO_CHEST_REF = -1;
+    private static final int EMPTY_REF = -2;
+    private static final int BLOCK_SIZE = RECORD_SIZE * 2048; //Size of each write when the whole file is rewritten
+
+    private final File file;
+    private final File chestFile;
+    private final LootTimes lootTimes;
+    private final Properties unresolvedLootTimes;
+    private final Map<Integer, Integer> chestRefs = new HashMap<>(); //Chest id -> Line of the .chests file
+    private final Map<String, Integer> keyRefs = new HashMap<>(); //Chest location -> Line of the .chests file
+    private final List<String> chestKeys = new ArrayList<>(); //Line of the .chests file -> Chest location
+    private FileChannel channel; //Only used by the save thread once the file has been loaded
+    private volatile MappedByteBuffer buffer; //Null until the file has been mapped
+    private BitSet pendingSlots; //Slots which changed while the file is being rewritten, null if it is mapped
+    private int generation; //The number of the latest rewrite
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new LootTimesFile for the given PhatLoot
+     *
+     * @param name The name of the PhatLoot
+     * @param lootTimes The loot times of the PhatLoot
+     * @param unresolvedLootTimes The loot times of the PhatLoot whose chests are not loaded
+     */
+    public LootTimesFile(String name, LootTimes lootTimes, Properties unresolvedLootTimes) {
+        File dir = new File(PhatLoots.dataFolder, "LootTimes");
+        file = new File(dir, name + EXTENSION);
+        chestFile = new File(dir, name + CHESTS_EXTENSION);
+        this.lootTimes = lootTimes;
+        this.unresolvedLootTimes = unresolvedLootTimes;
+    }
+
+    /**
+     * Returns true if the binary file exists
+     *
+     * @return true if there is a file to load
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Reads the loot times from the binary file.
+     * Times of chests in Worlds that are not loaded are added to the unresolved loot times
+     */
+    public void load() {
+        List<String> keys;
+        try {
+            keys = chestFile.exists()
+                   ? Files.readAllLines(chestFile.toPath(), StandardCharsets.UTF_8)
+                   : Collections.emptyList();
+        } catch (IOException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Load Failed!", ex);
+            return;
+        }
+
+        //Find the PhatLootChest of each line of the .chests file
+        PhatLootChest[] chests = new PhatLootChest[keys.size()];
+        for (int i = 0; i < chests.length; i++) {
+            chests[i] = PhatLootChest.getChest(keys.get(i).split("'"));
+        }
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                PhatLoots.logger.severe("Unknown format of " + file.getName() + ", loot times were not loaded!");
+                return;
+            }
+
+            int records = data.getInt(8) + data.getInt(12);
+            for (int i = 0; i < records; i++) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                int ref = data.getInt(offset);
+                if (ref == EMPTY_REF) {
+                    continue;
+                }
+                long most = data.getLong(offset + 4);
+                long least = data.getLong(offset + 12);
+                long time = data.getLong(offset + 20);
+
+                if (ref == NO_CHEST_REF) {
+                    lootTimes.put(LootTimes.NO_CHEST, most, least, time);
+                } else if (ref < chests.length && chests[ref] != null) {
+                    lootTimes.put(chests[ref].getId(), most, least, time);
+                } else if (ref < chests.length) {
+                    //Keep the time so that it is not lost when the file is rewritten
+                    unresolvedLootTimes.setProperty(keys.get(ref) + "'" + toUser(most, least), String.valueOf(time));
+                }
+            }
+        } catch (IOException | IndexOutOfBoundsException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Load Failed!", ex);
+        }
+    }
+
+    /**
+     * Rewrites the whole file from the current loot times and starts writing each change in place.
+     * This is done when the table is loaded and whenever the slots of the table are moved.
+     * A snapshot is taken on the calling thread and the file is written by the save thread of PhatLoots.
+     * Changes which are made until the new file is ready are written once it has been mapped
+     */
+    public void rewrite() {
+        PhatLoots.runSaveTask(snapshot());
+    }
+
+    /**
+     * Takes a snapshot of the loot times and holds changes to the slots until the snapshot has been written
+     *
+     * @return The task which writes the snapshot
+     */
+    private Runnable snapshot() {
+        //Rebuild the .chests file with only the chests that are still referenced
+        chestRefs.clear();
+        keyRefs.clear();
+        chestKeys.clear();
+        LootTimes snapshot = lootTimes.copy();
+        Map<Integer, Integer> refs = new HashMap<>();
+        for (int slot = 0; slot < snapshot.capacity(); slot++) {
+            int chest = snapshot.chestAt(slot);
+            if (snapshot.isUsed(slot) && chest != LootTimes.NO_CHEST && !chestRefs.containsKey(chest)) {
+                int ref = getKeyRef(PhatLootChest.getLocation(chest));
+                chestRefs.put(chest, ref);
+                refs.put(chest, ref);
+            }
+        }
+
+        List<long[]> unresolved = new ArrayList<>(); //Chest Ref, Most Bits, Least Bits, Time
+        for (String key : unresolvedLootTimes.stringPropertyNames()) {
+            int index = key.lastIndexOf('\'');
+            if (index > 0) {
+                try {
+                    String user = key.substring(index + 1);
+                    UUID uuid = user.equals("global") ? LootTimes.GLOBAL : UUID.fromString(user);
+                    unresolved.add(new long[] { getKeyRef(key.substring(0, index)), uuid.getMostSignificantBits(),
+                                                uuid.getLeastSignificantBits(), Long.parseLong(unresolvedLootTimes.getProperty(key)) });
+                } catch (IllegalArgumentException invalid) {
+                    PhatLoots.logger.warning("Dropped invalid loot time " + key);
+                }
+            }
+        }
+        List<String> keys = new ArrayList<>(chestKeys);
+
+        //Hold changes to the slots until the new file has been mapped
+        buffer = null;
+        pendingSlots = new BitSet();
+        int generation = ++this.generation;
+        return () -> write(snapshot, refs, unresolved, keys, generation);
+    }
+
+    /**
+     * Writes the given snapshot to a new file which then replaces the old file.
+     * This is called by the save thread
+     *
+     * @param snapshot The copy of the loot times
+     * @param refs The chest id -> Line of the .chests file of each chest in the snapshot
+     * @param unresolved The records of loot times whose chests are not loaded
+     * @param keys The lines of the .chests file
+     * @param generation The number of the rewrite
+     */
+    private synchronized void write(LootTimes snapshot, Map<Integer, Integer> refs, List<long[]> unresolved,
+                                    List<String> keys, int generation) {
+        if (closed) {
+            return;
+        }
+
+        int capacity = snapshot.capacity();
+        long size = HEADER_SIZE + (long) (capacity + unresolved.size()) * RECORD_SIZE;
+        File newFile = new File(file.getPath() + ".tmp");
+        File newChestFile = new File(chestFile.getPath() + ".tmp");
+        MappedByteBuffer mapped;
+        try {
+            try (FileChannel out = FileChannel.open(newFile.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+                block.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(unresolved.size());
+                for (int slot = 0; slot < capacity; slot++) {
+                    if (block.remaining() < RECORD_SIZE) {
+                        flush(out, block);
+                    }
+                    if (snapshot.isUsed(slot)) {
+                        int chest = snapshot.chestAt(slot);
+                        block.putInt(chest == LootTimes.NO_CHEST ? NO_CHEST_REF : refs.get(chest))
+                             .putLong(snapshot.mostBitsAt(slot)).putLong(snapshot.leastBitsAt(slot))
+                             .putLong(snapshot.timeAt(slot));
+                    } else {
+                        block.putInt(EMPTY_REF).putLong(0).putLong(0).putLong(0);
+                    }
+                }
+                for (long[] record : unresolved) {
+                    if (block.remaining() < RECORD_SIZE) {
+                        flush(out, block);
+                    }
+                    block.putInt((int) record[0]).putLong(record[1]).putLong(record[2]).putLong(record[3]);
+                }
+                flush(out, block);
+                out.force(true);
+            }
+            Files.write(newChestFile.toPath(), keys, StandardCharsets.UTF_8);
+
+            //The old file is released before it is replaced
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (!replace(newChestFile, chestFile)) {
+                Files.write(chestFile.toPath(), keys, StandardCharsets.UTF_8);
+                newChestFile.delete();
+            }
+            boolean replaced = replace(newFile, file);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!replaced) {
+                //The old file may still be mapped (which prevents replacing it on Windows) so copy over it instead
+                try (FileChannel in = FileChannel.open(newFile.toPath(), StandardOpenOption.READ)) {
+                    channel.transferFrom(in, 0, size);
+                }
+                newFile.delete();
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+            return;
+        }
+
+        if (Bukkit.isPrimaryThread()) {
+            mapped(mapped, generation);
+        } else if (PhatLoots.plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(PhatLoots.plugin, () -> mapped(mapped, generation));
+        }
+    }
+
+    /**
+     * Starts writing changes in place once the file of the given rewrite has been mapped
+     *
+     * @param mapped The mapped file
+     * @param generation The number of the rewrite
+     */
+    private void mapped(MappedByteBuffer mapped, int generation) {
+        //A newer rewrite has already been started or the file has been closed
+        if (generation != this.generation || closed) {
+            return;
+        }
+
+        buffer = mapped;
+        BitSet slots = pendingSlots;
+        pendingSlots = null;
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            slotWritten(slot);
+        }
+    }
+
+    /**
+     * Writes all changes which have been made to the mapped file to the disk.
+     * This may be called from any thread
+     */
+    public void force() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * Stops writing changes to the file and closes it
+     */
+    public synchronized void close() {
+        //Changes which are held for a rewrite which has not been mapped yet would otherwise be lost
+        if (pendingSlots != null) {
+            snapshot().run();
+        }
+        force();
+        closed = true;
+        buffer = null;
+        pendingSlots = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Deletes the binary file and its .chests file
+     */
+    public void delete() {
+        close();
+        file.delete();
+        chestFile.delete();
+    }
+
+    @Override
+    public void slotWritten(int slot) {
+        if (pendingSlots != null) {
+            pendingSlots.set(slot);
+            return;
+        }
+        if (buffer == null) {
+            return;
+        }
+        if (!lootTimes.isUsed(slot)) {
+            slotRemoved(slot);
+            return;
+        }
+
+        int chest = lootTimes.chestAt(slot);
+        int ref = chest == LootTimes.NO_CHEST ? NO_CHEST_REF : getChestRef(chest);
+        writeRecord(slot, ref, lootTimes.mostBitsAt(slot), lootTimes.leastBitsAt(slot), lootTimes.timeAt(slot));
+    }
+
+    @Override
+    public void slotRemoved(int slot) {
+        if (pendingSlots != null) {
+            pendingSlots.set(slot);
+        } else if (buffer != null) {
+            buffer.putInt(HEADER_SIZE + slot * RECORD_SIZE, EMPTY_REF);
+        }
+    }
+
+    @Override
+    public void rehashed() {
+        if (buffer != null || pendingSlots != null) {
+            rewrite();
+        }
+    }
+
+    private void writeRecord(int index, int ref, long most, long least, long time) {
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.putLong(offset + 4, most);
+        buffer.putLong(offset + 12, least);
+        buffer.putLong(offset + 20, time);
+        buffer.putInt(offset, ref); //The ref is written last so that a partial record is not seen as used
+    }
+
+    /**
+     * Returns the line of the .chests file for the given chest, adding the chest if it is new
+     *
+     * @param chest The id of the PhatLootChest
+     * @return The reference to the chest
+     */
+    private int getChestRef(int chest) {
+        Integer ref = chestRefs.get(chest);
+        if (ref != null) {
+            return ref;
+        }
+
+        String key = PhatLootChest.getLocation(chest);
+        int size = chestKeys.size();
+        ref = getKeyRef(key);
+        chestRefs.put(chest, ref);
+
+        //Append the new chest on the save thread so that it follows any rewrite of the .chests file
+        if (chestKeys.size() > size) {
+            PhatLoots.runSaveTask(() -> append(key));
+        }
+        return ref;
+    }
+
+    /**
+     * Appends the given chest location to the .chests file.
+     * This is called by the save thread
+     *
+     * @param key The location of the chest in the form World'x'y'z
+     */
+    private synchronized void append(String key) {
+        if (closed) {
+            return;
+        }
+        try {
+            Files.write(chestFile.toPath(), Collections.singletonList(key), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+        }
+    }
+
+    /**
+     * Returns the line of the .chests file for the given chest location, adding the location if it is new
+     *
+     * @param key The location of the chest in the form World'x'y'z
+     * @return The reference to the chest
+     */
+    private int getKeyRef(String key) {
+        return keyRefs.computeIfAbsent(key, k -> {
+            chestKeys.add(k);
+            return chestKeys.size() - 1;
+        });
+    }
+
+    private static void flush(FileChannel out, ByteBuffer block) throws IOException {
+        block.flip();
+        while (block.hasRemaining()) {
+            out.write(block);
+        }
+        block.clear();
+    }
+
+    /**
+     * Atomically moves the given file over the target file
+     *
+     * @param from The new file
+     * @param to The file to replace
+     * @return false if the file could not be replaced
+     */
+    private static boolean replace(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static String toUser(long most, long least) {
+        return most == 0 && least == 0 ? "global" : new UUID(most, least).toString();
+    }
+}
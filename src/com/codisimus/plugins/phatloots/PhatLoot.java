@@ -3,14 +3,18 @@ package com.codisimus.plugins.phatloots;
 import com.codisimus.plugins.phatloots.conditions.LootCondition;
 import com.codisimus.plugins.phatloots.events.*;
 import com.codisimus.plugins.phatloots.loot.*;
+import com.codisimus.plugins.phatloots.storage.FlatFileStorage;
+import com.codisimus.plugins.phatloots.storage.LootStorage;
 import java.io.*;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.ObjLongConsumer;
 import java.util.logging.Level;
 
+import com.codisimus.plugins.phatloots.util.LootPlacement;
 import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.apache.commons.lang3.time.DateUtils;
@@ -43,6 +47,7 @@ import org.bukkit.inventory.meta.PotionMeta;
 public final class PhatLoot implements ConfigurationSerializable {
 
     public static final NamespacedKey LINK_TAG = new NamespacedKey(PhatLoots.plugin, "link");
+    private static final int MAX_MISSING_LOOT_TIMES = 4096; //The amount of misses of an indexed LootStorage to remember
 
     public static String current; //The currently loading PhatLoot (used for debugging)
     public static String last; //The last successfully loaded PhatLoot (used for debugging)
@@ -55,13 +60,16 @@ public final class PhatLoot implements ConfigurationSerializable {
     static boolean decimals; //True if money values should include decimals
     static boolean unlink; //True if global chests that never reset should be unlinked after looting
     static boolean soundOnAutoLoot;
+    static boolean alwaysResyncInventory; //True if the Player's Inventory should be resent after every loot
     static boolean commandCooldown;
+    public static boolean binaryLootTimes; //True if loot times should be saved in memory mapped binary files
 
     public String name; //A unique name for the PhatLoot
-    public List<Loot> lootList; //List of Loot
+    public List<Loot> lootList; //List of Loot, call updateLootPlan after modifying it
+    private volatile LootPlan lootPlan = LootPlan.EMPTY; //The compiled lootList which may be rolled for on any thread
     private List<LootCondition> lootConditions = new ArrayList<>(); // Map of Loot conditions
 
-    public int days; //Reset time (will never reset if any are negative)
+    public int days; //Reset time (will never reset if any are negative), use setResetTime to modify
     public int hours;
     public int minutes;
     public int seconds;
@@ -76,7 +84,80 @@ public final class PhatLoot implements ConfigurationSerializable {
     public double particleExtra;
     public int particleAmount;
     private Set<PhatLootChest> chests = new HashSet<>(); //Set of Chests linked to this PhatLoot
-    private Properties lootTimes = new Properties(); //PhatLootChest'PlayerName=Year'Day'Hour'Minute'Second
+    private LootTimes lootTimes = new LootTimes(); //PhatLootChest id + User -> Time looted
+    private Properties unresolvedLootTimes = new Properties(); //Loot times of chests in unloaded Worlds
+    private long resetTime; //Reset time in milliseconds (0 if there is no cooldown, -1 if it never resets)
+    private volatile boolean dirty; //True if the loot times have changed since they were last saved
+    private LootTimesFile lootTimesFile; //The binary file of the loot times, null if binaryLootTimes is false
+    private boolean indexed; //True if loot times are looked up in the LootStorage as they are needed
+    private Map<LootTimeKey, Long> changedLootTimes = new HashMap<>(); //Loot times to write to an indexed LootStorage
+    private final List<LootStorage.LootTimeFilter> unsavedRemovals = new ArrayList<>(); //Removals to write to an indexed LootStorage
+    private final PendingRemovals pendingRemovals = new PendingRemovals(); //Removals which have not been written yet
+    private final LootTimes missingLootTimes = new LootTimes(); //Keys which are known to have no time in an indexed LootStorage
+
+    /**
+     * A loot time which is waiting to be written to an indexed LootStorage
+     *
+     * @param chest The chest in the form world'x'y'z or null if the time is not for a chest
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     */
+    private record LootTimeKey(String chest, long most, long least) {}
+
+    /**
+     * The removals of loot times which have not been written to an indexed LootStorage yet.
+     * Removals are indexed by chest and by user so that a lookup only checks the removals which may match it.
+     * Removals are added by the main thread and dropped by the save thread once they have been written
+     */
+    private static final class PendingRemovals {
+        private final Map<String, List<LootStorage.LootTimeFilter>> byChest = new HashMap<>(); //Removals of a chest
+        private final Map<UUID, List<LootStorage.LootTimeFilter>> byUser = new HashMap<>(); //Removals of a user in any chest
+        private final List<LootStorage.LootTimeFilter> others = new ArrayList<>(); //Removals of every chest and user
+
+        synchronized void add(LootStorage.LootTimeFilter filter) {
+            indexOf(filter).add(filter);
+        }
+
+        synchronized void removeAll(List<LootStorage.LootTimeFilter> filters) {
+            for (LootStorage.LootTimeFilter filter : filters) {
+                List<LootStorage.LootTimeFilter> list = indexOf(filter);
+                list.remove(filter);
+                if (list.isEmpty()) {
+                    if (filter.chest() != null) {
+                        byChest.remove(filter.chest());
+                    } else if (filter.user() != null) {
+                        byUser.remove(filter.user());
+                    }
+                }
+            }
+        }
+
+        synchronized boolean matches(String chest, long most, long least) {
+            return matches(others, chest, most, least)
+                   || chest != null && matches(byChest.get(chest), chest, most, least)
+                   || !byUser.isEmpty() && matches(byUser.get(new UUID(most, least)), chest, most, least);
+        }
+
+        private List<LootStorage.LootTimeFilter> indexOf(LootStorage.LootTimeFilter filter) {
+            if (filter.chest() != null) {
+                return byChest.computeIfAbsent(filter.chest(), key -> new ArrayList<>());
+            }
+            return filter.user() != null
+                   ? byUser.computeIfAbsent(filter.user(), key -> new ArrayList<>())
+                   : others;
+        }
+
+        private static boolean matches(List<LootStorage.LootTimeFilter> filters, String chest, long most, long least) {
+            if (filters != null) {
+                for (LootStorage.LootTimeFilter filter : filters) {
+                    if (filter.matches(chest, most, least)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
 
     /**
      * Constructs a new PhatLoot
@@ -90,6 +171,7 @@ public final class PhatLoot implements ConfigurationSerializable {
         hours = PhatLootsConfig.defaultHours;
         minutes = PhatLootsConfig.defaultMinutes;
         seconds = PhatLootsConfig.defaultSeconds;
+        updateResetTime();
         global = PhatLootsConfig.defaultGlobal;
         round = PhatLootsConfig.defaultRound;
         autoLoot = PhatLootsConfig.defaultAutoLoot;
@@ -113,6 +195,40 @@ public final class PhatLoot implements ConfigurationSerializable {
         return name;
     }
 
+    /**
+     * Sets the reset time of the PhatLoot.
+     * The PhatLoot will never reset if any of the values are negative
+     *
+     * @param days The amount of days
+     * @param hours The amount of hours
+     * @param minutes The amount of minutes
+     * @param seconds The amount of seconds
+     */
+    public void setResetTime(int days, int hours, int minutes, int seconds) {
+        this.days = days;
+        this.hours = hours;
+        this.minutes = minutes;
+        this.seconds = seconds;
+        updateResetTime();
+    }
+
+    /**
+     * Calculates the reset time in milliseconds from the days, hours, minutes and seconds
+     */
+    private void updateResetTime() {
+        if (days < 0 || hours < 0 || minutes < 0 || seconds < 0) {
+            resetTime = -1;
+        } else {
+            resetTime = days * DateUtils.MILLIS_PER_DAY
+                        + hours * DateUtils.MILLIS_PER_HOUR
+                        + minutes * DateUtils.MILLIS_PER_MINUTE
+                        + seconds * DateUtils.MILLIS_PER_SECOND;
+        }
+
+        //Loot times which are in memory may now expire sooner
+        PhatLoots.queueExpiry(getNextExpiry());
+    }
+
     /**
      * Convenience method for getTimeRemaining(player, chest) where chest == null
      *
@@ -143,36 +259,24 @@ public final class PhatLoot implements ConfigurationSerializable {
      */
     public long getTimeRemaining(Player player, PhatLootChest chest) {
         //Return 0 if the reset time is set to 0
-        if (days == 0 && hours == 0 && minutes == 0 && seconds == 0) {
+        if (resetTime == 0) {
             return 0;
         }
 
         //Get the correct timestamp
-        String timeStamp = lootTimes.getProperty(getKey(player, chest));
-        long time = 0;
-        if (timeStamp == null) {
+        UUID user = getUser(player);
+        long time = getLootTime(getChestId(chest), user.getMostSignificantBits(), user.getLeastSignificantBits());
+        if (time == LootTimes.NOT_FOUND) {
             return 0;
         }
 
-        try {
-            time = Long.parseLong(timeStamp);
-        } catch (NumberFormatException notLong) {
-            PhatLoots.logger.severe("Fixed corrupted time value!");
-        }
-
         //Return -1 if the reset time is set to never
-        if (days < 0 || hours < 0 || minutes < 0 || seconds < 0) {
+        if (resetTime < 0) {
             return -1;
         }
 
-        //Calculate the time that the chest will reset
-        time += days * DateUtils.MILLIS_PER_DAY
-                + hours * DateUtils.MILLIS_PER_HOUR
-                + minutes * DateUtils.MILLIS_PER_MINUTE
-                + seconds * DateUtils.MILLIS_PER_SECOND;
-
         //Return the remaining time or 0 if the time has already passed
-        return Math.max(time - Instant.now().atZone(ZoneOffset.systemDefault()).toEpochSecond() * 1000, 0);
+        return Math.max(time + resetTime - System.currentTimeMillis() / 1000 * 1000, 0);
     }
 
     /**
@@ -207,22 +311,27 @@ public final class PhatLoot implements ConfigurationSerializable {
      * @param chest The PhatLootChest to set the time for
      */
     public void setTime(Player player, PhatLootChest chest) {
-        ZonedDateTime time = Instant.now().atZone(ZoneOffset.systemDefault());
+        long time = System.currentTimeMillis() / 1000 * 1000;
 
-        if (round) {
+        if (round && seconds == 0) {
             //Don't worry about the lower unset time values
-            if (seconds == 0) {
-                time = time.truncatedTo(ChronoUnit.MINUTES);
-                if (minutes == 0) {
-                    time = time.truncatedTo(ChronoUnit.HOURS);
-                    if (hours == 0) {
-                        time = time.truncatedTo(ChronoUnit.DAYS);
-                    }
+            ZonedDateTime date = Instant.ofEpochMilli(time).atZone(ZoneOffset.systemDefault());
+            date = date.truncatedTo(ChronoUnit.MINUTES);
+            if (minutes == 0) {
+                date = date.truncatedTo(ChronoUnit.HOURS);
+                if (hours == 0) {
+                    date = date.truncatedTo(ChronoUnit.DAYS);
                 }
             }
+            time = date.toEpochSecond() * 1000;
         }
 
-        lootTimes.setProperty(getKey(player, chest), String.valueOf(time.toEpochSecond() * 1000));
+        UUID user = getUser(player);
+        int id = getChestId(chest);
+        lootTimes.put(id, user.getMostSignificantBits(), user.getLeastSignificantBits(), time);
+        queueExpiry(time);
+        putChangedLootTime(id, user.getMostSignificantBits(), user.getLeastSignificantBits(), time);
+        setDirty(user);
     }
 
     /**
@@ -409,8 +518,11 @@ public final class PhatLoot implements ConfigurationSerializable {
         }
 
         //Execute each command
+        //Commands may change the Player's Inventory without it being sent to the client
+        boolean resyncInventory = alwaysResyncInventory;
         for (CommandLoot command : lootBundle.getCommandList()) {
             command.execute(player);
+            resyncInventory = true;
         }
 
         //Send each message
@@ -465,27 +577,20 @@ public final class PhatLoot implements ConfigurationSerializable {
             flagToBreak = true;
         } else if (chest == null) {
             if (!itemList.isEmpty()) {
-                //Add each item to the Inventory
-                for (ItemStack item : itemList) {
-                    Collection<ItemStack> leftOvers = inv.addItem(item).values();
-                    if (PhatLootChest.shuffleLoot) {
-                        List<ItemStack> contents = Arrays.asList(inv.getContents());
-                        Collections.shuffle(contents);
-                        inv.setContents(contents.toArray(new ItemStack[0]));
-                    }
-                    if (!leftOvers.isEmpty()) {
-                        //Overflow all that could not fit in the Inventory
-                        for (ItemStack stack : leftOvers) {
-                            player.getWorld().dropItemNaturally(player.getLocation(), stack);
-                            if (PhatLootsConfig.overflow != null) {
-                                String msg = PhatLootsConfig.overflow.replace("<item>", PhatLootsUtil.getItemName(stack));
-                                int amount = stack.getAmount();
-                                msg = amount > 1
-                                      ? msg.replace("<amount>", String.valueOf(stack.getAmount()))
-                                      : msg.replace("x<amount>", "").replace("<amount>", String.valueOf(stack.getAmount()));
-                                player.sendMessage(msg);
-                            }
-                        }
+                //Add each item to the Inventory, scattering them in a single pass if loot is shuffled
+                Collection<ItemStack> leftOvers = PhatLootChest.shuffleLoot
+                                                  ? LootPlacement.place(inv, itemList)
+                                                  : inv.addItem(itemList.toArray(new ItemStack[0])).values();
+                //Overflow all that could not fit in the Inventory
+                for (ItemStack stack : leftOvers) {
+                    player.getWorld().dropItemNaturally(player.getLocation(), stack);
+                    if (PhatLootsConfig.overflow != null) {
+                        String msg = PhatLootsConfig.overflow.replace("<item>", PhatLootsUtil.getItemName(stack));
+                        int amount = stack.getAmount();
+                        msg = amount > 1
+                              ? msg.replace("<amount>", String.valueOf(stack.getAmount()))
+                              : msg.replace("x<amount>", "").replace("<amount>", String.valueOf(stack.getAmount()));
+                        player.sendMessage(msg);
                     }
                 }
                 player.openInventory(inv);
@@ -518,7 +623,8 @@ public final class PhatLoot implements ConfigurationSerializable {
                                                 .replace("<phatloot>", name));
         }
 
-        if (!autoSpill) {
+        //Items added to the Player's Inventory or the chest Inventory are already sent to the client
+        if (!autoSpill && resyncInventory) {
             //Solves some inventory issues
             player.updateInventory();
         }
@@ -793,38 +899,90 @@ public final class PhatLoot implements ConfigurationSerializable {
      * @return The Loot that has been rolled for
      */
     public LootBundle rollForLoot(LootBundle lootBundle, double lootingBonus) {
-        for (Loot loot : lootList) {
-            if (loot.rollForLoot(lootingBonus)) {
-                loot.getLoot(lootBundle, lootingBonus);
-            }
+        return lootPlan.rollForLoot(lootBundle, lootingBonus);
+    }
+
+    /**
+     * Rolls for a new LootBundle the given number of times in a single pass over the LootPlan
+     *
+     * @param times The number of LootBundles to roll for
+     * @param lootingBonus The amount to increase each roll by
+     * @return The Loot of each roll
+     */
+    public List<LootBundle> rollForLoot(int times, double lootingBonus) {
+        LootBundle[] lootBundles = new LootBundle[Math.max(0, times)];
+        for (int i = 0; i < lootBundles.length; i++) {
+            lootBundles[i] = new LootBundle();
         }
-        return lootBundle;
+        lootPlan.rollForLoot(lootBundles, lootingBonus);
+        return Arrays.asList(lootBundles);
     }
 
     /**
-     * Returns the key for the given Player and PhatLootChest
+     * Rolls the given number of times and adds all of the Loot to the given LootBundle.
+     * A LootHistogram may be given to total the Loot without keeping each item
+     *
+     * @param lootBundle The given LootBundle
+     * @param times The number of times to roll
+     * @param lootingBonus The amount to increase each roll by
+     * @return The given LootBundle
+     */
+    public LootBundle rollInto(LootBundle lootBundle, int times, double lootingBonus) {
+        return lootPlan.rollForLoot(lootBundle, lootingBonus, Math.max(0, times));
+    }
+
+    /**
+     * Returns the LootPlan which is rolled for.
+     * The LootPlan never changes so it is safe to use from any thread
+     *
+     * @return The compiled list of Loot
+     */
+    public LootPlan getLootPlan() {
+        return lootPlan;
+    }
+
+    /**
+     * Compiles the list of Loot into a new LootPlan and swaps it in for the old one.
+     * This must be called on the main thread after the list of Loot or any of its collections have been edited
+     */
+    public void updateLootPlan() {
+        lootPlan = lootList == null ? LootPlan.EMPTY : LootPlan.compile(lootList);
+    }
+
+    /**
+     * Returns the id of the given PhatLootChest as it is used in the loot times
      *
-     * @param player The Player or null if global
      * @param chest The PhatLootChest which may be null
-     * @return the key that represents this player and chest
+     * @return the id of the chest or LootTimes.NO_CHEST
      */
-    private String getKey(Player player, PhatLootChest chest) {
-        String user = getUser(player);
+    private static int getChestId(PhatLootChest chest) {
         return chest == null
-               ? user
-               : chest.toString() + "'" + user;
+               ? LootTimes.NO_CHEST
+               : chest.getId();
     }
 
     /**
-     * Returns the user whether it is the Player's name or 'global'
+     * Returns the location of the PhatLootChest of the given id as it is saved in the LootStorage
+     *
+     * @param id The id of the chest or LootTimes.NO_CHEST
+     * @return The chest in the form world'x'y'z or null
+     */
+    private static String getChestKey(int id) {
+        return id == LootTimes.NO_CHEST
+               ? null
+               : PhatLootChest.getLocation(id);
+    }
+
+    /**
+     * Returns the user whether it is the Player's UUID or the global user
      *
      * @param player The Player or null if global
-     * @return the String of the user
+     * @return the UUID of the user
      */
-    private String getUser(Player player) {
+    private UUID getUser(Player player) {
         return global || player == null
-               ? "global"
-               : player.getUniqueId().toString();
+               ? LootTimes.GLOBAL
+               : player.getUniqueId();
     }
 
     /**
@@ -862,7 +1020,36 @@ public final class PhatLoot implements ConfigurationSerializable {
      */
     public void addChest(PhatLootChest chest) {
         PhatLoots.plugin.getLoadedListener().addChest(chest);
-        chests.add(chest);
+        if (chests.add(chest)) {
+            chest.link(this);
+            if (ChunkLinks.enabled) {
+                ChunkLinks.save(chest);
+            }
+        }
+    }
+
+    /**
+     * Links the given PhatLootChest of a Chunk which was loaded.
+     * Unlike addChest, the link is not saved
+     *
+     * @param chest The PhatLootChest which is linked in its Chunk
+     */
+    void linkChunkChest(PhatLootChest chest) {
+        if (chests.add(chest)) {
+            chest.link(this);
+        }
+    }
+
+    /**
+     * Unlinks the given PhatLootChest of a Chunk which is being unloaded.
+     * Unlike removeChest, the link is kept in the Chunk
+     *
+     * @param chest The PhatLootChest which is linked in its Chunk
+     */
+    void unlinkChunkChest(PhatLootChest chest) {
+        if (chests.remove(chest)) {
+            chest.unlink(this);
+        }
     }
 
     /**
@@ -881,16 +1068,41 @@ public final class PhatLoot implements ConfigurationSerializable {
      * @param chest The given PhatLootChest
      */
     public void removeChest(PhatLootChest chest) {
-        chests.remove(chest);
+        if (chests.remove(chest)) {
+            chest.unlink(this);
+            if (ChunkLinks.enabled) {
+                ChunkLinks.save(chest);
+            }
+        }
     }
 
     /**
      * Removes all PhatLootChests that are linked to this PhatLoot
      */
     public void removeChests() {
+        unlinkChests();
+        if (ChunkLinks.enabled) {
+            for (PhatLootChest chest : chests) {
+                if (chest != null) {
+                    ChunkLinks.save(chest);
+                }
+            }
+        }
         chests.clear();
     }
 
+    /**
+     * Removes this PhatLoot from the linked PhatLoots of each of its PhatLootChests.
+     * The PhatLootChests are still kept in this PhatLoot
+     */
+    void unlinkChests() {
+        for (PhatLootChest chest : chests) {
+            if (chest != null) {
+                chest.unlink(this);
+            }
+        }
+    }
+
     /**
      * Adds the given loot to this PhatLoot
      *
@@ -905,6 +1117,7 @@ public final class PhatLoot implements ConfigurationSerializable {
             }
         }
         lootList.add(target);
+        updateLootPlan();
         return true;
     }
 
@@ -920,6 +1133,7 @@ public final class PhatLoot implements ConfigurationSerializable {
         while (itr.hasNext()) {
             if (itr.next().equals(target)) {
                 itr.remove();
+                updateLootPlan();
                 return true;
             }
         }
@@ -953,18 +1167,12 @@ public final class PhatLoot implements ConfigurationSerializable {
      * @param block The given Block
      */
     public void reset(Block block) {
-        if (block == null) {
-            //Reset all PhatLootChests
-            lootTimes.clear();
-        } else {
-            //Find the PhatLootChest of the given Block and reset it
-            String chest = PhatLootChest.getChest(block).toString();
-            for (String key : lootTimes.stringPropertyNames()) {
-                if (key.startsWith(chest)) {
-                    lootTimes.remove(key);
-                    break;
-                }
-            }
+        removeLootTimes(block);
+        if (PlayerLootTimes.enabled) {
+            //Loot times of offline players are not in memory
+            PlayerLootTimes.reset(name, block == null
+                                        ? LootStorage.LootTimeFilter.ALL
+                                        : new LootStorage.LootTimeFilter(null, PhatLootChest.getChest(block).toString(), null, false));
         }
     }
 
@@ -974,7 +1182,22 @@ public final class PhatLoot implements ConfigurationSerializable {
      * @param world The World whose loot times are to be reset
      */
     public void resetForWorld(World world) {
-        removeLootTimes(world.getName());
+        BitSet ids = PhatLootChest.getChestIds(world.getName());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            lootTimes.removeChest(id);
+        }
+
+        //Saved loot times of the World are removed at once rather than chest by chest
+        LootStorage.LootTimeFilter filter = new LootStorage.LootTimeFilter(world.getName(), null, null, false);
+        removeSavedLootTimes(filter);
+        if (PlayerLootTimes.enabled) {
+            PlayerLootTimes.reset(name, filter);
+        }
+        String prefix = world.getName() + "'";
+        if (unresolvedLootTimes.keySet().removeIf(key -> ((String) key).startsWith(prefix)) && lootTimesFile != null) {
+            lootTimesFile.rewrite();
+        }
+        dirty = true;
     }
 
     /**
@@ -983,23 +1206,12 @@ public final class PhatLoot implements ConfigurationSerializable {
      * @param player The Player whose loot times are to be reset
      */
     public void resetForPlayer(Player player) {
-        removeLootTimes(player.getUniqueId().toString());
-    }
-
-    /**
-     * Removes keys with a specific prefix from the loot times
-     *
-     * @param prefix The first word of the key (such as the Player or World)
-     */
-    private void removeLootTimes(String prefix) {
-        LinkedList<String> keysToRemove = new LinkedList<>();
-        for (String key : lootTimes.stringPropertyNames()) {
-            if (key.startsWith(prefix + "'")) {
-                keysToRemove.add(key);
-            }
+        UUID uuid = player.getUniqueId();
+        if (lootTimes.removeUser(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) > 0) {
+            setDirty(uuid);
         }
-        for (String key : keysToRemove) {
-            lootTimes.remove(key);
+        if (isSavedWithPhatLoot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())) {
+            removeSavedLootTimes(new LootStorage.LootTimeFilter(null, null, uuid, false));
         }
     }
 
@@ -1010,45 +1222,306 @@ public final class PhatLoot implements ConfigurationSerializable {
      */
     public void clean(Block block) {
         //Check if the reset time is 0 seconds
-        if (days == 0 && hours == 0 && minutes == 0 && seconds == 0) {
+        if (resetTime == 0) {
             //Reset the PhatLoot because all times have cooled down
-            reset(block);
+            if (!lootTimes.isEmpty()) {
+                removeLootTimes(block);
+            }
             return;
         }
 
         //Check if the reset time is never
-        if (days < 0 || hours < 0 || minutes < 0 || seconds < 0) {
+        if (resetTime < 0) {
             //Don't reset the PhatLoot because there is no cool down
             return;
         }
 
-        Set<String> keys; //The Set of all keys to check
+        //Remove each time which is older than the latest timestamp that would have reset by now
+        long time = System.currentTimeMillis() - resetTime;
+        int removed = block == null
+                      ? lootTimes.removeExpired(time, Integer.MAX_VALUE)
+                      : lootTimes.removeOlderThan(PhatLootChest.getChest(block).getId(), time);
+        if (removed > 0) {
+            dirty = true;
+        }
+    }
 
-        if (block == null) { //Add all keys
-            keys = lootTimes.stringPropertyNames();
-        } else { //Add each key that starts with the chest location
-            keys = new HashSet<>();
-            String chest = PhatLootChest.getChest(block).toString();
-            for (String key : lootTimes.stringPropertyNames()) {
-                if (key.startsWith(chest)) {
-                    keys.add(key);
-                }
+    /**
+     * Removes up to the given amount of loot times that have fully cooled down.
+     * The oldest loot times are removed first
+     *
+     * @param max The maximum amount of loot times to remove
+     * @return The number of loot times that were removed
+     */
+    public int cleanExpired(int max) {
+        //Times of PhatLoots without a cool down are left for clean()
+        if (resetTime <= 0) {
+            return 0;
+        }
+
+        int removed = lootTimes.removeExpired(System.currentTimeMillis() - resetTime, max);
+        if (removed > 0) {
+            dirty = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the earliest time at which a loot time of this PhatLoot may expire
+     *
+     * @return The time or Long.MAX_VALUE if no loot time is left for cleanExpired()
+     */
+    long getNextExpiry() {
+        return resetTime > 0 && !lootTimes.isEmpty()
+               ? lootTimes.oldestTime() + resetTime
+               : Long.MAX_VALUE;
+    }
+
+    /**
+     * Makes sure that the given loot time is cleaned up once it expires
+     *
+     * @param time The time that was looted
+     */
+    private void queueExpiry(long time) {
+        if (resetTime > 0) {
+            PhatLoots.queueExpiry(time + resetTime);
+        }
+    }
+
+    /**
+     * Removes the loot times of all PhatLootChests of this PhatLoot which are in memory.
+     * If a Block is given, remove only the times of that PhatLootChest
+     *
+     * @param block The given Block or null to signify all blocks
+     */
+    private void removeLootTimes(Block block) {
+        if (block == null) {
+            //Reset all PhatLootChests
+            unresolvedLootTimes.clear();
+            lootTimes.clear();
+            removeSavedLootTimes(LootStorage.LootTimeFilter.ALL);
+        } else {
+            //Find the PhatLootChest of the given Block and reset it
+            PhatLootChest chest = PhatLootChest.getChest(block);
+            lootTimes.removeChest(chest.getId());
+            removeSavedLootTimes(new LootStorage.LootTimeFilter(null, chest.toString(), null, false));
+        }
+        dirty = true;
+    }
+
+    /**
+     * Flags the loot times of the given user as changed so that they are saved
+     *
+     * @param user The UUID of the user whose loot time changed
+     */
+    private void setDirty(UUID user) {
+        //Loot times of players may be saved apart from the PhatLoot
+        if (PlayerLootTimes.enabled && !user.equals(LootTimes.GLOBAL)) {
+            PlayerLootTimes.setDirty(user);
+        } else {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Returns true if the loot times of the given user are saved with the PhatLoot
+     *
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @return false if the loot times of the user are saved apart from the PhatLoot
+     */
+    private static boolean isSavedWithPhatLoot(long most, long least) {
+        return !PlayerLootTimes.enabled || most == 0 && least == 0;
+    }
+
+    /**
+     * Returns the time that the user looted the given chest.
+     * Loot times which are not in memory are looked up in an indexed LootStorage and then kept in memory
+     *
+     * @param chest The id of the PhatLootChest or LootTimes.NO_CHEST
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @return The time that was looted or LootTimes.NOT_FOUND
+     */
+    private long getLootTime(int chest, long most, long least) {
+        long time = lootTimes.get(chest, most, least);
+        if (time != LootTimes.NOT_FOUND || !indexed || !isSavedWithPhatLoot(most, least)) {
+            return time;
+        }
+
+        //Keys which were not found are not looked up again until a time is put for them
+        if (missingLootTimes.get(chest, most, least) != LootTimes.NOT_FOUND) {
+            return LootTimes.NOT_FOUND;
+        }
+
+        //Removed loot times may still be in the LootStorage until they are written
+        String key = getChestKey(chest);
+        if (pendingRemovals.matches(key, most, least)) {
+            return LootTimes.NOT_FOUND;
+        }
+
+        try {
+            time = PhatLoots.storage.loadLootTime(name, key, most, least);
+        } catch (IOException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Could not read the loot time of PhatLoot " + name, ex);
+            return LootTimes.NOT_FOUND;
+        }
+        if (time != LootTimes.NOT_FOUND) {
+            lootTimes.put(chest, most, least, time);
+            queueExpiry(time);
+        } else {
+            //Forget the oldest misses first so that the misses of a long running server do not fill the memory
+            if (missingLootTimes.size() >= MAX_MISSING_LOOT_TIMES) {
+                missingLootTimes.removeExpired(Long.MAX_VALUE, 1);
+            }
+            missingLootTimes.put(chest, most, least, System.currentTimeMillis());
+        }
+        return time;
+    }
+
+    /**
+     * Flags the given loot time to be written to an indexed LootStorage
+     *
+     * @param chest The id of the PhatLootChest or LootTimes.NO_CHEST
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @param time The time that was looted
+     */
+    private void putChangedLootTime(int chest, long most, long least, long time) {
+        if (indexed && isSavedWithPhatLoot(most, least)) {
+            changedLootTimes.put(new LootTimeKey(getChestKey(chest), most, least), time);
+            missingLootTimes.remove(chest, most, least);
+        }
+    }
+
+    /**
+     * Flags the loot times of the given filter to be deleted from an indexed LootStorage.
+     * They are not looked up in the LootStorage until the deletion has been written
+     *
+     * @param filter The filter of the removed loot times
+     */
+    private void removeSavedLootTimes(LootStorage.LootTimeFilter filter) {
+        if (!indexed) {
+            return;
+        }
+        changedLootTimes.keySet().removeIf(key -> filter.matches(key.chest(), key.most(), key.least()));
+        unsavedRemovals.add(filter);
+        pendingRemovals.add(filter);
+        dirty = true;
+    }
+
+    /** Player Loot Time Methods **/
+
+    /**
+     * Adds the given loot time of an online player without flagging the loot times as changed
+     *
+     * @param user The UUID of the player
+     * @param chest The location of the PhatLootChest in the form World'x'y'z or null
+     * @param time The time that was saved
+     * @return false if the PhatLootChest is not loaded
+     */
+    boolean putPlayerLootTime(UUID user, String chest, long time) {
+        int id = LootTimes.NO_CHEST;
+        if (chest != null) {
+            PhatLootChest phatLootChest = PhatLootChest.getChest(chest.split("'"));
+            if (phatLootChest == null) {
+                return false;
             }
+            id = phatLootChest.getId();
+        }
+        lootTimes.put(id, user.getMostSignificantBits(), user.getLeastSignificantBits(), time);
+        queueExpiry(time);
+        return true;
+    }
+
+    /**
+     * Adds the given loot time of a player to the loot times which are saved with the PhatLoot
+     *
+     * @param user The UUID of the player
+     * @param chest The location of the PhatLootChest in the form World'x'y'z or null
+     * @param time The time that was saved
+     */
+    void restorePlayerLootTime(UUID user, String chest, long time) {
+        putLootTime(chest, user.getMostSignificantBits(), user.getLeastSignificantBits(), time);
+        if (indexed) {
+            changedLootTimes.put(new LootTimeKey(chest, user.getMostSignificantBits(), user.getLeastSignificantBits()), time);
         }
+        dirty = true;
+    }
 
-        //Calculate the latest timestamp that would have reset by now
-        long time = Instant.now().toEpochMilli()
-                    - days * DateUtils.MILLIS_PER_DAY
-                    - hours * DateUtils.MILLIS_PER_HOUR
-                    - minutes * DateUtils.MILLIS_PER_MINUTE
-                    - seconds * DateUtils.MILLIS_PER_SECOND;
+    /**
+     * Passes each loot time of the given player to the consumer
+     *
+     * @param user The UUID of the player
+     * @param consumer The consumer of the chest location (or null) and time
+     */
+    void forEachPlayerLootTime(UUID user, ObjLongConsumer<String> consumer) {
+        long most = user.getMostSignificantBits();
+        long least = user.getLeastSignificantBits();
+        for (int slot = lootTimes.firstSlotOfUser(most, least); slot >= 0; slot = lootTimes.nextSlotOfUser(slot)) {
+            int chest = lootTimes.chestAt(slot);
+            consumer.accept(chest == LootTimes.NO_CHEST ? null : PhatLootChest.getLocation(chest),
+                            lootTimes.timeAt(slot));
+        }
+    }
 
-        //Remove each key whose value is less than the calculated time
-        for (String key : keys) {
-            if (Long.parseLong(lootTimes.getProperty(key)) < time) {
-                lootTimes.remove(key);
+    /**
+     * Removes the loot times of the given player from memory without flagging the loot times as changed
+     *
+     * @param user The UUID of the player
+     */
+    void evictPlayerLootTimes(UUID user) {
+        lootTimes.removeUser(user.getMostSignificantBits(), user.getLeastSignificantBits());
+    }
+
+    /**
+     * Removes every loot time which is not global and passes it to the consumer
+     *
+     * @param consumer The consumer of the removed loot times
+     */
+    void removePlayerLootTimes(LootStorage.LootTimeConsumer consumer) {
+        LootStorage.LootTimeFilter players = new LootStorage.LootTimeFilter(null, null, null, true);
+        HashSet<UUID> users = new HashSet<>();
+        if (indexed) {
+            //Only the loot times which have been used are in memory so read the others from the LootStorage
+            try {
+                PhatLoots.storage.loadLootTimes(name, players, (chest, most, least, time) -> {
+                    consumer.accept(chest, most, least, time);
+                    users.add(new UUID(most, least));
+                });
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Could not read the loot times of PhatLoot " + name, ex);
+                return;
+            }
+        }
+        for (int slot = 0; slot < lootTimes.capacity(); slot++) {
+            if (lootTimes.isUsed(slot) && (lootTimes.mostBitsAt(slot) != 0 || lootTimes.leastBitsAt(slot) != 0)) {
+                int chest = lootTimes.chestAt(slot);
+                consumer.accept(chest == LootTimes.NO_CHEST ? null : PhatLootChest.getLocation(chest),
+                                lootTimes.mostBitsAt(slot), lootTimes.leastBitsAt(slot), lootTimes.timeAt(slot));
+                users.add(new UUID(lootTimes.mostBitsAt(slot), lootTimes.leastBitsAt(slot)));
             }
         }
+        for (UUID user : users) {
+            evictPlayerLootTimes(user);
+        }
+
+        for (String key : unresolvedLootTimes.stringPropertyNames()) {
+            int index = key.lastIndexOf('\'');
+            UUID user = toUser(key.substring(index + 1));
+            if (index > 0 && user != null && !user.equals(LootTimes.GLOBAL)) {
+                consumer.accept(key.substring(0, index), user.getMostSignificantBits(), user.getLeastSignificantBits(),
+                                Long.parseLong(unresolvedLootTimes.getProperty(key)));
+                unresolvedLootTimes.remove(key);
+                users.add(user);
+            }
+        }
+
+        //Only global loot times are left to be saved with the PhatLoot
+        if (!users.isEmpty()) {
+            removeSavedLootTimes(players);
+            dirty = true;
+        }
     }
 
     /** Save/Load Methods **/
@@ -1063,65 +1536,286 @@ public final class PhatLoot implements ConfigurationSerializable {
     }
 
     /**
-     * Writes the Loot times of the PhatLoot to file.
-     * If there is an old file it is over written
+     * Writes the Loot times of the PhatLoot to the LootStorage if they have changed.
+     * A snapshot is taken on the calling thread and the loot times are written by the save thread of PhatLoots
      */
     public void saveLootTimes() {
-        //Don't save an empty file
-        if (lootTimes.isEmpty()) {
+        //Don't rewrite loot times which have not changed
+        if (!dirty) {
             return;
         }
+        dirty = false;
 
-        File file = new File(PhatLoots.dataFolder, "LootTimes" + File.separator + name + ".properties");
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            lootTimes.store(fos, null);
-        } catch (IOException ex) {
-            PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+        //Binary files are updated as the loot times change and only need to be flushed to the disk
+        if (lootTimesFile != null) {
+            PhatLoots.runSaveTask(lootTimesFile::force);
+            return;
+        }
+
+        //Indexed storage only needs the loot times which have changed
+        if (indexed) {
+            saveChangedLootTimes();
+            return;
+        }
+
+        //Take a snapshot of the loot times along with the location of each chest
+        LootTimes times = lootTimes.copy();
+        Properties unresolved = (Properties) unresolvedLootTimes.clone();
+        boolean globalOnly = PlayerLootTimes.enabled; //Loot times of players are then saved apart from the PhatLoot
+        Map<Integer, String> chestKeys = new HashMap<>();
+        for (int slot = 0; slot < times.capacity(); slot++) {
+            if (times.isUsed(slot) && times.chestAt(slot) != LootTimes.NO_CHEST) {
+                chestKeys.computeIfAbsent(times.chestAt(slot), PhatLootChest::getLocation);
+            }
         }
+
+        PhatLoots.runSaveTask(() -> {
+            try {
+                PhatLoots.storage.saveLootTimes(name, consumer -> {
+                    for (int slot = 0; slot < times.capacity(); slot++) {
+                        if (times.isUsed(slot) && (!globalOnly || times.mostBitsAt(slot) == 0 && times.leastBitsAt(slot) == 0)) {
+                            consumer.accept(chestKeys.get(times.chestAt(slot)), times.mostBitsAt(slot),
+                                            times.leastBitsAt(slot), times.timeAt(slot));
+                        }
+                    }
+                    for (String key : unresolved.stringPropertyNames()) {
+                        //The user is always the last part of the key
+                        int index = key.lastIndexOf('\'');
+                        UUID user = toUser(key.substring(index + 1));
+                        if (index > 0 && user != null) {
+                            consumer.accept(key.substring(0, index), user.getMostSignificantBits(),
+                                            user.getLeastSignificantBits(), Long.parseLong(unresolved.getProperty(key)));
+                        }
+                    }
+                });
+            } catch (IOException ex) {
+                //Try again on the next save
+                dirty = true;
+                PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+            }
+        });
     }
 
     /**
-     * Reads Loot times of the PhatLoot from file
+     * Writes the loot times which have changed since the last save to the indexed LootStorage.
+     * Loot times which could not be written are written again with the next save
      */
-    public void loadLootTimes() {
-        File file = new File(PhatLoots.dataFolder, "LootTimes" + File.separator + name + ".properties");
-        if (!file.exists()) {
-            return;
+    private void saveChangedLootTimes() {
+        Map<LootTimeKey, Long> changed = changedLootTimes;
+        changedLootTimes = new HashMap<>();
+        List<LootStorage.LootTimeFilter> removed = new ArrayList<>(unsavedRemovals);
+        unsavedRemovals.clear();
+        long expiredBefore = resetTime > 0
+                             ? System.currentTimeMillis() - resetTime
+                             : Long.MIN_VALUE;
+
+        PhatLoots.runSaveTask(() -> {
+            try {
+                PhatLoots.storage.updateLootTimes(name, removed, expiredBefore, consumer -> {
+                    for (Map.Entry<LootTimeKey, Long> entry : changed.entrySet()) {
+                        LootTimeKey key = entry.getKey();
+                        consumer.accept(key.chest(), key.most(), key.least(), entry.getValue());
+                    }
+                });
+                pendingRemovals.removeAll(removed);
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+                if (PhatLoots.plugin.isEnabled()) {
+                    Bukkit.getScheduler().runTask(PhatLoots.plugin, () -> retryChangedLootTimes(changed, removed));
+                }
+            }
+        });
+    }
+
+    /**
+     * Flags loot times which could not be written to be written with the next save
+     *
+     * @param changed The loot times which were not written
+     * @param removed The removals which were not written
+     */
+    private void retryChangedLootTimes(Map<LootTimeKey, Long> changed, List<LootStorage.LootTimeFilter> removed) {
+        //Removals since then have already been applied to the changed loot times which are in memory
+        List<LootStorage.LootTimeFilter> since = new ArrayList<>(unsavedRemovals);
+        for (Map.Entry<LootTimeKey, Long> entry : changed.entrySet()) {
+            LootTimeKey key = entry.getKey();
+            if (since.stream().noneMatch(filter -> filter.matches(key.chest(), key.most(), key.least()))) {
+                changedLootTimes.putIfAbsent(key, entry.getValue());
+            }
+        }
+
+        //The removals are written again first so loot times in memory which they would remove are written after them
+        unsavedRemovals.addAll(0, removed);
+        for (int slot = 0; slot < lootTimes.capacity(); slot++) {
+            if (lootTimes.isUsed(slot) && isSavedWithPhatLoot(lootTimes.mostBitsAt(slot), lootTimes.leastBitsAt(slot))) {
+                LootTimeKey key = new LootTimeKey(getChestKey(lootTimes.chestAt(slot)),
+                                                  lootTimes.mostBitsAt(slot), lootTimes.leastBitsAt(slot));
+                if (removed.stream().anyMatch(filter -> filter.matches(key.chest(), key.most(), key.least()))) {
+                    changedLootTimes.putIfAbsent(key, lootTimes.timeAt(slot));
+                }
+            }
         }
-        try (FileInputStream fis = new FileInputStream(file)) {
-            lootTimes.load(fis);
+        dirty = true;
+    }
+
+    /**
+     * Reads Loot times of the PhatLoot from the LootStorage.
+     * Loot times are converted between the .properties and binary formats if the file of the other format is found
+     */
+    public void loadLootTimes() {
+        LootTimesFile binaryFile = new LootTimesFile(name, lootTimes, unresolvedLootTimes);
+
+        try {
+            if (binaryLootTimes && PhatLoots.storage instanceof FlatFileStorage flatFile) {
+                if (binaryFile.exists()) {
+                    binaryFile.load();
+                } else {
+                    File file = flatFile.getLootTimesFile(name);
+                    if (file.exists()) {
+                        //Convert the old file and keep it as a backup
+                        PhatLoots.storage.loadLootTimes(name, this::putLootTime);
+                        file.renameTo(new File(file.getPath() + ".old"));
+                        PhatLoots.logger.info("Converted loot times of " + name + " to the binary format");
+                    }
+                }
+                clean(null);
+
+                //Write the loaded times to the binary file and keep it updated from now on
+                lootTimesFile = binaryFile;
+                lootTimesFile.rewrite();
+                lootTimes.setObserver(lootTimesFile);
+                dirty = false;
+            } else if (PhatLoots.storage.isIndexed()) {
+                //Loot times are looked up as they are needed
+                indexed = true;
+                if (binaryFile.exists()) {
+                    binaryFile.load();
+                    clean(null);
+
+                    //Write the times of the binary file to the LootStorage before the binary file is deleted
+                    for (int slot = 0; slot < lootTimes.capacity(); slot++) {
+                        if (lootTimes.isUsed(slot)) {
+                            changedLootTimes.put(new LootTimeKey(getChestKey(lootTimes.chestAt(slot)), lootTimes.mostBitsAt(slot),
+                                                                 lootTimes.leastBitsAt(slot)),
+                                                 lootTimes.timeAt(slot));
+                        }
+                    }
+                    for (String key : unresolvedLootTimes.stringPropertyNames()) {
+                        int index = key.lastIndexOf('\'');
+                        UUID user = toUser(key.substring(index + 1));
+                        if (index > 0 && user != null) {
+                            changedLootTimes.put(new LootTimeKey(key.substring(0, index), user.getMostSignificantBits(),
+                                                                 user.getLeastSignificantBits()),
+                                                 Long.parseLong(unresolvedLootTimes.getProperty(key)));
+                        }
+                    }
+                    unresolvedLootTimes.clear();
+                    dirty = true;
+                    saveLootTimes();
+                    PhatLoots.runSaveTask(binaryFile::delete);
+                    PhatLoots.logger.info("Converted loot times of " + name + " from the binary format");
+                }
+            } else {
+                PhatLoots.storage.loadLootTimes(name, this::putLootTime);
+                boolean convert = lootTimes.isEmpty() && unresolvedLootTimes.isEmpty() && binaryFile.exists();
+                if (convert) {
+                    binaryFile.load();
+                }
+                clean(null);
+
+                if (convert) {
+                    //Save the times of the binary file to the LootStorage before the binary file is deleted
+                    dirty = true;
+                    saveLootTimes();
+                    PhatLoots.runSaveTask(binaryFile::delete);
+                    PhatLoots.logger.info("Converted loot times of " + name + " from the binary format");
+                }
+            }
         } catch (IOException ex) {
             PhatLoots.logger.log(Level.SEVERE, "Load Failed!", ex);
         }
-        clean(null);
+
+        //Times which were read from the binary file were put directly into the table
+        PhatLoots.queueExpiry(getNextExpiry());
     }
 
     /**
-     * Writes the Chest Locations of the PhatLoot to file.
-     * If there is an old file it is over written
+     * Stops writing loot times to the binary file and closes it
      */
-    public void saveChests() {
-        File file = new File(PhatLoots.dataFolder, "Chests" + File.separator + name + ".txt");
+    void closeLootTimes() {
+        if (lootTimesFile != null) {
+            lootTimes.setObserver(null);
+            lootTimesFile.close();
+            lootTimesFile = null;
+        }
+    }
 
-        //Don't save an empty file
-        if (chests.isEmpty()) {
-            //Delete the pre-existing file
-            if (file.exists()) {
-                file.delete();
+    /**
+     * Adds the given loot time to the loot times.
+     * Times of chests which cannot be found are kept so that they are not lost when the loot times are saved
+     *
+     * @param chest The location of the PhatLootChest in the form World'x'y'z or null
+     * @param most The most significant bits of the user's UUID
+     * @param least The least significant bits of the user's UUID
+     * @param time The time that was saved
+     */
+    private void putLootTime(String chest, long most, long least, long time) {
+        int id = LootTimes.NO_CHEST;
+        if (chest != null) {
+            PhatLootChest phatLootChest = PhatLootChest.getChest(chest.split("'"));
+            if (phatLootChest == null) {
+                String user = most == 0 && least == 0
+                              ? "global"
+                              : new UUID(most, least).toString();
+                unresolvedLootTimes.setProperty(chest + "'" + user, String.valueOf(time));
+                return;
             }
-            return;
+            id = phatLootChest.getId();
         }
+        lootTimes.put(id, most, least, time);
+        missingLootTimes.remove(id, most, least);
+        queueExpiry(time);
+    }
 
-        try (FileWriter fWriter = new FileWriter(file)) {
-            try (PrintWriter pWriter = new PrintWriter(fWriter)) {
-                for (PhatLootChest chest : getChests()) {
-                    if (chest!=null)
-                        pWriter.println(chest.toString());
+    /**
+     * Returns the UUID of the given user
+     *
+     * @param user The UUID String or 'global'
+     * @return The UUID of the user or null if the String is not valid
+     */
+    private static UUID toUser(String user) {
+        try {
+            return user.equals("global") ? LootTimes.GLOBAL : UUID.fromString(user);
+        } catch (IllegalArgumentException notUUID) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the Chest Locations of the PhatLoot to the LootStorage.
+     * Any previously saved Chest Locations are replaced.
+     * The locations are gathered on the calling thread and written by the save thread of PhatLoots
+     */
+    public void saveChests() {
+        List<String> locations = new ArrayList<>();
+        if (ChunkLinks.enabled) {
+            //Only links which have not yet been moved into their Chunks remain in the LootStorage
+            locations.addAll(ChunkLinks.getPending(name));
+        } else {
+            for (PhatLootChest chest : getChests()) {
+                if (chest != null) {
+                    locations.add(chest.toString());
                 }
             }
-        } catch (IOException ex) {
-            PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
         }
+
+        PhatLoots.runSaveTask(() -> {
+            try {
+                //An empty collection removes the pre-existing chests
+                PhatLoots.storage.saveChests(name, locations);
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Save Failed!", ex);
+            }
+        });
     }
 
     /**
@@ -1134,20 +1828,24 @@ public final class PhatLoot implements ConfigurationSerializable {
     }
 
     /**
-     * Reads Chest Locations of the PhatLoot from file
+     * Reads Chest Locations of the PhatLoot from the LootStorage
      */
     public final void loadChests() {
-        File file = new File(PhatLoots.dataFolder, "Chests" + File.separator + name + ".txt");
-        if (!file.exists()) {
-            return;
-        }
-        try (Scanner scanner = new Scanner(file)) {
-            //Each line of the file is a new PhatLootChest
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
+        try {
+            if (ChunkLinks.enabled) {
+                //Chests are linked as their Chunks are loaded
+                ChunkLinks.addPending(this, PhatLoots.storage.loadChests(name));
+                return;
+            }
+
+            //Each line of data is a new PhatLootChest
+            for (String line : PhatLoots.storage.loadChests(name)) {
                 String[] split = line.split("'");
                 if (split.length == 4) {
-                    chests.add(PhatLootChest.getChest(split));
+                    PhatLootChest chest = PhatLootChest.getChest(split);
+                    if (chests.add(chest) && chest != null) {
+                        chest.link(this);
+                    }
                 } else {
                     PhatLoots.logger.severe("Invalid chest data for PhatLoot: " + name);
                     PhatLoots.logger.severe("Failed line of data: " + line);
@@ -1159,23 +1857,26 @@ public final class PhatLoot implements ConfigurationSerializable {
     }
 
     /**
-     * Writes the Loot Tables of the PhatLoot to file.
-     * If there is an old file it is over written
+     * Writes the Loot Tables of the PhatLoot to the LootStorage.
+     * Any previously saved Loot Tables are replaced.
+     * The Loot Tables are serialized on the calling thread and written by the save thread of PhatLoots
      */
     public void save() {
+        //The Loot Tables may have been edited
+        updateLootPlan();
+
         //Create a new config and populate it with this PhatLoot's information
         YamlConfiguration config = new YamlConfiguration();
         config.set(name, this);
 
-        //Save the config with UTF-8 encoding
-        File file = new File(PhatLoots.dataFolder, "LootTables" + File.separator + name + ".yml");
         String data = config.saveToString();
-        try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
-            out.write(data, 0, data.length());
-            out.flush();
-        } catch (IOException ex) {
-            PhatLoots.logger.log(Level.SEVERE, "Could not save PhatLoot " + name, ex);
-        }
+        PhatLoots.runSaveTask(() -> {
+            try {
+                PhatLoots.storage.saveLootTable(name, data);
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Could not save PhatLoot " + name, ex);
+            }
+        });
     }
 
     @Override
@@ -1223,6 +1924,7 @@ public final class PhatLoot implements ConfigurationSerializable {
             hours = (Integer) nestedMap.get(currentLine = "Hours");
             minutes = (Integer) nestedMap.get(currentLine = "Minutes");
             seconds = (Integer) nestedMap.get(currentLine = "Seconds");
+            updateResetTime();
 
             global = (Boolean) map.get(currentLine = "Global");
             round = (Boolean) map.get(currentLine = "RoundDownTime");
@@ -1316,6 +2018,7 @@ public final class PhatLoot implements ConfigurationSerializable {
         last = current;
         current = null;
 
+        updateLootPlan();
         loadChests();
         loadLootTimes();
     }
@@ -3,9 +3,12 @@ package com.codisimus.plugins.phatloots;
 import com.codisimus.plugins.phatloots.events.ChestBreakEvent;
 import com.codisimus.plugins.phatloots.events.ChestRespawnEvent;
 import com.codisimus.plugins.phatloots.events.ChestRespawnEvent.RespawnReason;
+import com.codisimus.plugins.phatloots.util.LongObjectHashMap;
+import com.codisimus.plugins.phatloots.util.LootPlacement;
 import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Sound;
@@ -13,7 +16,6 @@ import org.bukkit.SoundCategory;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
-import org.bukkit.block.Chest;
 import org.bukkit.block.Dispenser;
 import org.bukkit.block.Dropper;
 import org.bukkit.block.Skull;
@@ -22,6 +24,7 @@ import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Lightable;
 import org.bukkit.block.data.Powerable;
 import org.bukkit.block.data.type.Piston;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.TNTPrimed;
@@ -48,48 +51,201 @@ public class PhatLootChest {
         Material.REDSTONE_LAMP, Material.REDSTONE_TORCH,
         Material.REPEATER, Material.PISTON
     );
-    private static Map<String, PhatLootChest> chests = new HashMap<>(); //Chest Location -> PhatLootChest
+    private static Map<UUID, LongObjectHashMap<PhatLootChest>> chests = new HashMap<>(); //World UUID -> Packed Block Location -> PhatLootChest
+    private static List<PhatLootChest> chestsById = new ArrayList<>(); //Chest id -> PhatLootChest, null if it was evicted
+    private static long[] keysById = new long[64]; //Chest id -> Packed Block Location
+    private static Map<UUID, LongObjectHashMap<Integer>> evictedIds = new HashMap<>(); //World UUID -> Packed Block Location -> Chest id
+    private static Map<String, BitSet> chestIdsByWorld = new HashMap<>(); //World Name -> Chest ids
+    private static Map<UUID, LongObjectHashMap<List<PhatLootChest>>> chestsByChunk = new HashMap<>(); //World UUID -> Packed Chunk Location -> PhatLootChests
+    private static final PhatLoot[] NO_PHATLOOTS = new PhatLoot[0];
     static HashSet<PhatLootChest> chestsToRespawn = new HashSet<>();
     public static Map<UUID, PhatLootChest> openPhatLootChests = new HashMap<>(); //Player -> Open PhatLootChest
     static boolean useBreakAndRepawn;
     static boolean soundOnBreak;
+    static double soundRadius; //How far away Players may hear a global chest open or close
     static boolean shuffleLoot;
     static String chestName;
+    private final int id;
     private String world;
+    private World loadedWorld; //Cached so that the World is not looked up by name each time it is needed
+    private PhatLoot[] linkedPhatLoots = NO_PHATLOOTS; //Replaced rather than modified so that it may be shared
     private int x, y, z;
-    private BlockState state;
-    private BlockState otherHalfState;
+    private BlockSnapshot state; //The Block as it was before it was broken, null if the chest is not broken
+    private BlockSnapshot otherHalfState;
+    private Kind kind; //Cached so that the Block is not looked at each time the chest is looted, null if unknown
+    private int inventorySize;
+    private BlockState lootState; //Snapshot of the Dispenser or Dropper which is being looted
 
     /**
-     * Constructs a new PhatLootChest with the given Location
+     * The parts of a broken Block which are needed to respawn it.
+     * This is much smaller than a BlockState and may be saved to respawn the Block after a restart
      *
-     * @param location The given Location
+     * @param x The x-coordinate of the Block
+     * @param y The y-coordinate of the Block
+     * @param z The z-coordinate of the Block
+     * @param blockData The BlockData as a String which includes the Material
+     * @param skullOwner The owner of a player head or null if there is none
+     */
+    record BlockSnapshot(int x, int y, int z, String blockData, UUID skullOwner) {
+        /**
+         * Takes a snapshot of the given Block
+         *
+         * @param block The Block which is about to be broken
+         * @return The BlockSnapshot of the Block
+         */
+        static BlockSnapshot of(Block block) {
+            UUID owner = null;
+            Material type = block.getType();
+            if (type == Material.PLAYER_HEAD || type == Material.PLAYER_WALL_HEAD) {
+                //Only player heads need the BlockState
+                Skull skull = (Skull) block.getState();
+                if (skull.getOwningPlayer() != null) {
+                    owner = skull.getOwningPlayer().getUniqueId();
+                }
+            }
+            return new BlockSnapshot(block.getX(), block.getY(), block.getZ(), block.getBlockData().getAsString(), owner);
+        }
+
+        /**
+         * Reads a BlockSnapshot which was saved to the given section
+         *
+         * @param section The ConfigurationSection which the snapshot was saved to
+         * @return The BlockSnapshot or null if there is none in the section
+         */
+        static BlockSnapshot load(ConfigurationSection section) {
+            if (section == null) {
+                return null;
+            }
+            String owner = section.getString("Owner");
+            return new BlockSnapshot(section.getInt("X"), section.getInt("Y"), section.getInt("Z"),
+                                     section.getString("Block"), owner == null ? null : UUID.fromString(owner));
+        }
+
+        /**
+         * Saves this BlockSnapshot to the given section
+         *
+         * @param section The ConfigurationSection to save to
+         */
+        void save(ConfigurationSection section) {
+            section.set("X", x);
+            section.set("Y", y);
+            section.set("Z", z);
+            section.set("Block", blockData);
+            if (skullOwner != null) {
+                section.set("Owner", skullOwner.toString());
+            }
+        }
+
+        /**
+         * Places the Block as it was when the snapshot was taken
+         *
+         * @param world The World of the Block
+         */
+        void restore(World world) {
+            Block block = world.getBlockAt(x, y, z);
+            block.setBlockData(Bukkit.createBlockData(blockData));
+            if (skullOwner != null && block.getState() instanceof Skull skull) {
+                skull.setOwningPlayer(Bukkit.getOfflinePlayer(skullOwner));
+                skull.update();
+            }
+        }
+    }
+
+    /**
+     * The kind of Block which a PhatLootChest is
      */
-    private PhatLootChest(Location location) {
-        world = location.getWorld().getName();
-        x = location.getBlockX();
-        y = location.getBlockY();
-        z = location.getBlockZ();
+    public enum Kind {
+        CHEST, TRAPPED_CHEST, ENDER_CHEST, DISPENSER, DROPPER, OTHER
     }
 
     /**
      * Constructs a new PhatLootChest with the given Block Location data
      *
-     * @param world The name of the World
+     * @param world The World of the Block
      * @param x The x-coordinate of the Block
      * @param y The y-coordinate of the Block
      * @param z The z-coordinate of the Block
+     * @param evictedId The id of the PhatLootChest if it was evicted before or null if it is new
      */
-    private PhatLootChest(String world, int x, int y, int z) {
-        this.world = world;
+    private PhatLootChest(World world, int x, int y, int z, Integer evictedId) {
+        this.world = world.getName();
+        loadedWorld = world;
         this.x = x;
         this.y = y;
         this.z = z;
-        World w = Bukkit.getWorld(world);
-        if (w == null) { //The world is not currently loaded
-            PhatLoots.logger.warning("The world '" + world + "' is not currently loaded, all linked chests in this world are being unlinked.");
-            PhatLoots.logger.warning("THIS CHEST UNLINKING IS PERMANANT IF YOU LINK/UNLINK ANY OTHER CHESTS IN THIS PHATLOOT!");
+        id = register(this, evictedId);
+    }
+
+    /**
+     * Assigns a chest id to the given PhatLootChest.
+     * A chest which was evicted gets its old id back so that its loot times still belong to it
+     *
+     * @param chest The PhatLootChest which is being constructed
+     * @param evictedId The id of the PhatLootChest if it was evicted before or null if it is new
+     * @return The id of the PhatLootChest
+     */
+    private static int register(PhatLootChest chest, Integer evictedId) {
+        if (evictedId != null) {
+            chestsById.set(evictedId, chest);
+            return evictedId;
+        }
+
+        int id = chestsById.size();
+        chestsById.add(chest);
+        if (id == keysById.length) {
+            keysById = Arrays.copyOf(keysById, id * 2);
+        }
+        keysById[id] = toKey(chest.x, chest.y, chest.z);
+        chestIdsByWorld.computeIfAbsent(chest.world, key -> new BitSet()).set(id);
+        return id;
+    }
+
+    /**
+     * Returns the PhatLootChest with the given id
+     *
+     * @param id The id of the PhatLootChest
+     * @return The PhatLootChest or null if there is none with that id or it was evicted along with its Chunk
+     */
+    public static PhatLootChest getChest(int id) {
+        return id < 0 || id >= chestsById.size() ? null : chestsById.get(id);
+    }
+
+    /**
+     * Returns the location of the PhatLootChest with the given id.
+     * Unlike getChest, this also finds chests which were evicted along with their Chunk
+     *
+     * @param id The id of the PhatLootChest
+     * @return The chest in the form world'x'y'z or null if there is none with that id
+     */
+    public static String getLocation(int id) {
+        PhatLootChest chest = getChest(id);
+        if (chest != null) {
+            return chest.toString();
+        }
+        if (id < 0 || id >= chestsById.size()) {
+            return null;
+        }
+
+        //Unpack the location which was saved when the chest was registered
+        long key = keysById[id];
+        for (Map.Entry<String, BitSet> entry : chestIdsByWorld.entrySet()) {
+            if (entry.getValue().get(id)) {
+                return entry.getKey() + "'" + (int) (key >> 38) + "'" + (int) (key << 52 >> 52) + "'" + (int) (key << 26 >> 38);
+            }
         }
+        return null;
+    }
+
+    /**
+     * Returns the ids of all PhatLootChests in the given World.
+     * The returned BitSet should not be modified
+     *
+     * @param world The name of the World
+     * @return The ids of the PhatLootChests in the World
+     */
+    public static BitSet getChestIds(String world) {
+        BitSet ids = chestIdsByWorld.get(world);
+        return ids == null ? new BitSet() : ids;
     }
 
     /**
@@ -100,7 +256,7 @@ public class PhatLootChest {
      */
     public static PhatLootChest getChest(Block block) {
         block = PhatLootsUtil.getLeftSide(block);
-        return getChest(block.getLocation());
+        return getChest(block.getWorld(), block.getX(), block.getY(), block.getZ());
     }
 
     /**
@@ -110,17 +266,76 @@ public class PhatLootChest {
      * @return The found or created PhatLootChest
      */
     public static PhatLootChest getChest(Location location) {
-        String key = toString(location);
-        PhatLootChest chest = chests.get(key);
-        if (chest != null) {
-            return chest;
-        }
+        return getChest(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
 
-        chest = new PhatLootChest(location);
-        chests.put(key, chest);
+    /**
+     * Returns the PhatLootChest with the given Block Location data
+     *
+     * @param world The World of the Block
+     * @param x The x-coordinate of the Block
+     * @param y The y-coordinate of the Block
+     * @param z The z-coordinate of the Block
+     * @return The found or created PhatLootChest
+     */
+    public static PhatLootChest getChest(World world, int x, int y, int z) {
+        LongObjectHashMap<PhatLootChest> worldChests = chests.computeIfAbsent(world.getUID(), key -> new LongObjectHashMap<>());
+        long key = toKey(x, y, z);
+        PhatLootChest chest = worldChests.get(key);
+        if (chest == null) {
+            LongObjectHashMap<Integer> worldEvicted = evictedIds.get(world.getUID());
+            chest = new PhatLootChest(world, x, y, z, worldEvicted == null ? null : worldEvicted.remove(key));
+            worldChests.put(key, chest);
+            chest.addToChunk(world);
+        }
         return chest;
     }
 
+    /**
+     * Returns the PhatLootChests within the given Chunk.
+     * The returned List should not be modified
+     *
+     * @param world The World of the Chunk
+     * @param chunkX The x-coordinate of the Chunk
+     * @param chunkZ The z-coordinate of the Chunk
+     * @return The PhatLootChests in the Chunk
+     */
+    public static List<PhatLootChest> getChests(World world, int chunkX, int chunkZ) {
+        LongObjectHashMap<List<PhatLootChest>> worldChunks = chestsByChunk.get(world.getUID());
+        List<PhatLootChest> chunkChests = worldChunks == null ? null : worldChunks.get(toChunkKey(chunkX, chunkZ));
+        return chunkChests == null ? Collections.emptyList() : chunkChests;
+    }
+
+    /**
+     * Returns the PhatLootChests within the given distance of the given Location.
+     * Only the Chunks which are within range are checked
+     *
+     * @param location The given Location
+     * @param radius The maximum distance in blocks
+     * @return The list of nearby PhatLootChests
+     */
+    public static List<PhatLootChest> getChestsNear(Location location, int radius) {
+        List<PhatLootChest> nearby = new ArrayList<>();
+        World w = location.getWorld();
+        int blockX = location.getBlockX();
+        int blockY = location.getBlockY();
+        int blockZ = location.getBlockZ();
+        long radiusSquared = (long) radius * radius;
+        for (int chunkX = (blockX - radius) >> 4; chunkX <= (blockX + radius) >> 4; chunkX++) {
+            for (int chunkZ = (blockZ - radius) >> 4; chunkZ <= (blockZ + radius) >> 4; chunkZ++) {
+                for (PhatLootChest chest : getChests(w, chunkX, chunkZ)) {
+                    long dx = chest.x - blockX;
+                    long dy = chest.y - blockY;
+                    long dz = chest.z - blockZ;
+                    if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                        nearby.add(chest);
+                    }
+                }
+            }
+        }
+        return nearby;
+    }
+
     /**
      * Returns the PhatLootChest with the given Block Location data
      *
@@ -135,7 +350,7 @@ public class PhatLootChest {
         if (w == null) {
             return null;
         } else {
-            return getChest(new Location(w, x, y, z));
+            return getChest(w, x, y, z);
         }
     }
 
@@ -154,12 +369,19 @@ public class PhatLootChest {
     }
 
     /**
-     * Returns a collection of all linked chests
+     * Returns a collection of all linked chests.
+     * Chests which were evicted along with their Chunk are not included
      *
      * @return A collection of all PhatLootChests
      */
     public static Collection<PhatLootChest> getChests() {
-        return chests.values();
+        List<PhatLootChest> loaded = new ArrayList<>(chestsById.size());
+        for (PhatLootChest chest : chestsById) {
+            if (chest != null) {
+                loaded.add(chest);
+            }
+        }
+        return Collections.unmodifiableList(loaded);
     }
 
     /**
@@ -169,8 +391,174 @@ public class PhatLootChest {
      * @return true if the given Block is linked to a PhatLoot
      */
     public static boolean isPhatLootChest(Block block) {
-        String key = toString(PhatLootsUtil.getLeftSide(block));
-        return chests.containsKey(key);
+        if (!mayBePhatLootChest(block)) {
+            return false;
+        }
+        return isLinked(findChest(PhatLootsUtil.getLeftSide(block)));
+    }
+
+    /**
+     * Returns false if the given Block is certainly not a PhatLootChest.
+     * This is checked before the left side of a double chest is found because that requires the BlockState.
+     * The left side of a double chest is always next to the given Block so only those coordinates are checked.
+     * PhatLootChests which were only created by getChest(Block) and are not linked to any PhatLoot are not counted
+     *
+     * @param block the given Block
+     * @return false if neither the Block nor any Block beside it is a linked PhatLootChest
+     */
+    public static boolean mayBePhatLootChest(Block block) {
+        LongObjectHashMap<PhatLootChest> worldChests = chests.get(block.getWorld().getUID());
+        if (worldChests == null) {
+            return false;
+        }
+
+        int x = block.getX();
+        int y = block.getY();
+        int z = block.getZ();
+        return isLinked(worldChests.get(toKey(x, y, z)))
+               || isLinked(worldChests.get(toKey(x + 1, y, z)))
+               || isLinked(worldChests.get(toKey(x - 1, y, z)))
+               || isLinked(worldChests.get(toKey(x, y, z + 1)))
+               || isLinked(worldChests.get(toKey(x, y, z - 1)));
+    }
+
+    private static boolean isLinked(PhatLootChest chest) {
+        return chest != null && chest.linkedPhatLoots.length > 0;
+    }
+
+    /**
+     * Returns the PhatLootChest of the given Block without creating one
+     *
+     * @param block The given Block which should already be the left side of a double chest
+     * @return The PhatLootChest or null if the Block is not a PhatLootChest
+     */
+    public static PhatLootChest findChest(Block block) {
+        LongObjectHashMap<PhatLootChest> worldChests = chests.get(block.getWorld().getUID());
+        return worldChests == null ? null : worldChests.get(toKey(block.getX(), block.getY(), block.getZ()));
+    }
+
+    /**
+     * Removes the links of every PhatLootChest.
+     * This is done before the PhatLoots are reloaded
+     */
+    static void unlinkAll() {
+        for (PhatLootChest chest : chestsById) {
+            if (chest != null) {
+                chest.linkedPhatLoots = NO_PHATLOOTS;
+            }
+        }
+    }
+
+    /**
+     * Removes each PhatLootChest of the given Chunk from memory unless it is linked, broken or open.
+     * The id of each evicted chest is kept by its location so that the chest gets the same id when it is created again
+     *
+     * @param w The World of the Chunk
+     * @param chunkX The x-coordinate of the Chunk
+     * @param chunkZ The z-coordinate of the Chunk
+     */
+    static void evictChunk(World w, int chunkX, int chunkZ) {
+        LongObjectHashMap<List<PhatLootChest>> worldChunks = chestsByChunk.get(w.getUID());
+        long chunkKey = toChunkKey(chunkX, chunkZ);
+        List<PhatLootChest> chunkChests = worldChunks == null ? null : worldChunks.get(chunkKey);
+        if (chunkChests == null) {
+            return;
+        }
+
+        LongObjectHashMap<PhatLootChest> worldChests = chests.get(w.getUID());
+        Collection<PhatLootChest> open = openPhatLootChests.values();
+        Iterator<PhatLootChest> itr = chunkChests.iterator();
+        while (itr.hasNext()) {
+            PhatLootChest chest = itr.next();
+            if (chest.linkedPhatLoots.length == 0 && !chest.isBroken()
+                    && !chestsToRespawn.contains(chest) && !open.contains(chest)) {
+                long key = toKey(chest.x, chest.y, chest.z);
+                worldChests.remove(key);
+                evictedIds.computeIfAbsent(w.getUID(), k -> new LongObjectHashMap<>()).put(key, chest.id);
+                chestsById.set(chest.id, null);
+                itr.remove();
+            }
+        }
+        if (chunkChests.isEmpty()) {
+            worldChunks.remove(chunkKey);
+        }
+    }
+
+    /**
+     * Clears the cached World of each PhatLootChest in the given World.
+     * This should be called when the World is unloaded
+     *
+     * @param w The World which is being unloaded
+     */
+    public static void unloadWorld(World w) {
+        LongObjectHashMap<PhatLootChest> worldChests = chests.get(w.getUID());
+        if (worldChests != null) {
+            for (PhatLootChest chest : worldChests.values()) {
+                chest.loadedWorld = null;
+            }
+        }
+    }
+
+    /**
+     * Packs the given Chunk coordinates into a single long
+     *
+     * @param chunkX The x-coordinate of the Chunk
+     * @param chunkZ The z-coordinate of the Chunk
+     * @return The packed coordinates
+     */
+    static long toChunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Adds this PhatLootChest to the index of PhatLootChests by Chunk
+     *
+     * @param w The World that this PhatLootChest is in
+     */
+    private void addToChunk(World w) {
+        chestsByChunk.computeIfAbsent(w.getUID(), key -> new LongObjectHashMap<>())
+                     .computeIfAbsent(toChunkKey(x >> 4, z >> 4), key -> new ArrayList<>())
+                     .add(this);
+    }
+
+    /**
+     * Removes this PhatLootChest from the index of PhatLootChests by Chunk
+     *
+     * @param w The World that this PhatLootChest is in
+     */
+    private void removeFromChunk(World w) {
+        LongObjectHashMap<List<PhatLootChest>> worldChunks = chestsByChunk.get(w.getUID());
+        long key = toChunkKey(x >> 4, z >> 4);
+        List<PhatLootChest> chunkChests = worldChunks == null ? null : worldChunks.get(key);
+        if (chunkChests != null) {
+            chunkChests.remove(this);
+            if (chunkChests.isEmpty()) {
+                worldChunks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Packs the given Block coordinates into a single long.
+     * 26 bits are used for x and z and 12 bits are used for y
+     *
+     * @param x The x-coordinate of the Block
+     * @param y The y-coordinate of the Block
+     * @param z The z-coordinate of the Block
+     * @return The packed coordinates
+     */
+    private static long toKey(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (long) y & 0xFFF;
+    }
+
+    /**
+     * Returns the id of this PhatLootChest.
+     * Ids are assigned as chests are created and are not saved between restarts
+     *
+     * @return The id of this PhatLootChest
+     */
+    public int getId() {
+        return id;
     }
 
     /**
@@ -179,8 +567,107 @@ public class PhatLootChest {
      * @return true if the PhatLootChest is a Dispenser or Dropper
      */
     public boolean isDispenser() {
-        Material type = Bukkit.getWorld(this.world).getBlockAt(x, y, z).getType();
-        return type == Material.DISPENSER || type == Material.DROPPER;
+        Kind kind = getKind();
+        return kind == Kind.DISPENSER || kind == Kind.DROPPER;
+    }
+
+    /**
+     * Returns the kind of Block which this PhatLootChest is.
+     * The kind is cached until the Block is changed or its Chunk is loaded again
+     *
+     * @return The Kind of the Block
+     */
+    public Kind getKind() {
+        if (kind == null) {
+            //The BlockData is enough to tell a double chest apart so no BlockState is needed
+            Block block = getBlock();
+            BlockData data = block.getBlockData();
+            switch (block.getType()) {
+            case CHEST:
+            case TRAPPED_CHEST:
+                kind = block.getType() == Material.CHEST ? Kind.CHEST : Kind.TRAPPED_CHEST;
+                inventorySize = data instanceof org.bukkit.block.data.type.Chest chest
+                                && chest.getType() != org.bukkit.block.data.type.Chest.Type.SINGLE
+                                ? 54
+                                : 27;
+                break;
+            case ENDER_CHEST:
+                kind = Kind.ENDER_CHEST;
+                inventorySize = 27;
+                break;
+            case DISPENSER:
+                kind = Kind.DISPENSER;
+                inventorySize = 9;
+                break;
+            case DROPPER:
+                kind = Kind.DROPPER;
+                inventorySize = 9;
+                break;
+            default:
+                kind = Kind.OTHER;
+                inventorySize = 27;
+                break;
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the size of the Inventory of this PhatLootChest
+     *
+     * @return 54 for a double chest, 9 for a Dispenser or Dropper and otherwise 27
+     */
+    public int getInventorySize() {
+        getKind();
+        return inventorySize;
+    }
+
+    /**
+     * Forgets the cached kind of Block so that it is looked at again when next needed
+     */
+    public void invalidateKind() {
+        kind = null;
+        lootState = null;
+    }
+
+    /**
+     * Forgets the cached kind of Block of any PhatLootChest at or beside the given Block.
+     * The Blocks beside are included since placing or breaking half of a double chest changes the other half
+     *
+     * @param block The Block which has changed
+     */
+    public static void invalidateKind(Block block) {
+        LongObjectHashMap<PhatLootChest> worldChests = chests.get(block.getWorld().getUID());
+        if (worldChests == null) {
+            return;
+        }
+
+        int x = block.getX();
+        int y = block.getY();
+        int z = block.getZ();
+        invalidateKind(worldChests.get(toKey(x, y, z)));
+        invalidateKind(worldChests.get(toKey(x + 1, y, z)));
+        invalidateKind(worldChests.get(toKey(x - 1, y, z)));
+        invalidateKind(worldChests.get(toKey(x, y, z + 1)));
+        invalidateKind(worldChests.get(toKey(x, y, z - 1)));
+    }
+
+    private static void invalidateKind(PhatLootChest chest) {
+        if (chest != null) {
+            chest.invalidateKind();
+        }
+    }
+
+    /**
+     * Forgets the cached kind of Block of each PhatLootChest in the given Chunk.
+     * Blocks may have been changed while the Chunk was not loaded
+     *
+     * @param chunk The Chunk which was loaded
+     */
+    public static void invalidateKinds(Chunk chunk) {
+        for (PhatLootChest chest : getChests(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            chest.invalidateKind();
+        }
     }
 
     /**
@@ -189,7 +676,19 @@ public class PhatLootChest {
      * @return The Block that this Chest Represents
      */
     public Block getBlock() {
-        return Bukkit.getWorld(world).getBlockAt(x, y, z);
+        return getWorld().getBlockAt(x, y, z);
+    }
+
+    /**
+     * Returns the World that this Chest is in
+     *
+     * @return The World or null if it is not loaded
+     */
+    public World getWorld() {
+        if (loadedWorld == null) {
+            loadedWorld = Bukkit.getWorld(world);
+        }
+        return loadedWorld;
     }
 
     /**
@@ -208,13 +707,46 @@ public class PhatLootChest {
      * @return a list of PhatLoots linked to the chest
      */
     public LinkedList<PhatLoot> getLinkedPhatLoots() {
-        LinkedList<PhatLoot> phatLoots = new LinkedList<>();
-        for (PhatLoot phatLoot : PhatLoots.getPhatLoots()) {
-            if (phatLoot.containsChest(this)) {
-                phatLoots.add(phatLoot);
+        return new LinkedList<>(Arrays.asList(linkedPhatLoots));
+    }
+
+    /**
+     * Returns all PhatLoots that are linked to this PhatLootChest.
+     * The returned array is shared and should not be modified
+     *
+     * @return an array of PhatLoots linked to the chest
+     */
+    public PhatLoot[] getLinkedPhatLootArray() {
+        return linkedPhatLoots;
+    }
+
+    /**
+     * Adds the given PhatLoot to the PhatLoots which are linked to this PhatLootChest
+     *
+     * @param phatLoot The PhatLoot which this chest was linked to
+     */
+    void link(PhatLoot phatLoot) {
+        invalidateKind();
+        PhatLoot[] linked = Arrays.copyOf(linkedPhatLoots, linkedPhatLoots.length + 1);
+        linked[linkedPhatLoots.length] = phatLoot;
+        linkedPhatLoots = linked;
+    }
+
+    /**
+     * Removes the given PhatLoot from the PhatLoots which are linked to this PhatLootChest
+     *
+     * @param phatLoot The PhatLoot which this chest was unlinked from
+     */
+    void unlink(PhatLoot phatLoot) {
+        for (int i = 0; i < linkedPhatLoots.length; i++) {
+            if (linkedPhatLoots[i] == phatLoot) {
+                PhatLoot[] linked = new PhatLoot[linkedPhatLoots.length - 1];
+                System.arraycopy(linkedPhatLoots, 0, linked, 0, i);
+                System.arraycopy(linkedPhatLoots, i + 1, linked, i, linked.length - i);
+                linkedPhatLoots = linked.length == 0 ? NO_PHATLOOTS : linked;
+                return;
             }
         }
-        return phatLoots;
     }
 
     /**
@@ -225,22 +757,35 @@ public class PhatLootChest {
     public void moveTo(Block target) {
         //Remove the old Block
         if (state != null) {
-            state.update(true);
+            state.restore(getWorld());
         }
         Block block = getBlock();
         block.setType(Material.AIR);
         block = PhatLootsUtil.getLeftSide(block);
 
-        //Set the new Block
+        //Set the new Block and move the PhatLootChest to its new key
+        chests.get(getWorld().getUID()).remove(toKey(x, y, z));
+        removeFromChunk(getWorld());
+        World targetWorld = target.getWorld();
+        if (!targetWorld.getName().equals(world)) {
+            chestIdsByWorld.get(world).clear(id);
+            chestIdsByWorld.computeIfAbsent(targetWorld.getName(), key -> new BitSet()).set(id);
+            world = targetWorld.getName();
+            loadedWorld = targetWorld;
+        }
         x = target.getX();
         y = target.getY();
         z = target.getZ();
+        keysById[id] = toKey(x, y, z);
+        chests.computeIfAbsent(targetWorld.getUID(), key -> new LongObjectHashMap<>()).put(toKey(x, y, z), this);
+        addToChunk(targetWorld);
+        invalidateKind();
         //Only 'spawn' the new chest if it is not triggered to respawn
         if (state == null) {
             target.setType(block.getType());
             target.setBlockData(block.getBlockData());
         } else {
-            state = target.getState();
+            state = BlockSnapshot.of(target);
         }
     }
 
@@ -264,22 +809,25 @@ public class PhatLootChest {
         }
 
         chestsToRespawn.add(this);
+        invalidateKind();
 
-        //Save the BlockState and remove the Block
+        //Save a snapshot of the Block and remove it
         Block block = getBlock();
-        state = block.getState();
+        state = BlockSnapshot.of(block);
         block.setType(Material.AIR);
 
         //Save the other half of the chest
         Block otherHalfBlock = PhatLootsUtil.getLeftSide(block);
         if (!otherHalfBlock.equals(block)) {
-            otherHalfState = otherHalfBlock.getState();
+            otherHalfState = BlockSnapshot.of(otherHalfBlock);
             otherHalfBlock.setType(Material.AIR);
         }
 
         //Schedule the chest to respawn
         if (event.getRespawnTime() > 0) {
-            Bukkit.getScheduler().runTaskLater(PhatLoots.plugin, () -> respawn(RespawnReason.INITIAL), event.getRespawnTime());
+            ChestRespawns.schedule(this, event.getRespawnTime(), RespawnReason.INITIAL);
+        } else {
+            ChestRespawns.changed();
         }
 
         if (soundOnBreak) {
@@ -302,96 +850,105 @@ public class PhatLootChest {
             }
 
             if (event.getRespawnTime() > 0) {
-                Bukkit.getScheduler().runTaskLater(PhatLoots.plugin, () -> respawn(RespawnReason.DELAYED), event.getRespawnTime());
+                ChestRespawns.schedule(this, event.getRespawnTime(), RespawnReason.DELAYED);
             } else {
-                state.update(true);
-                //Hack to fix a Bukkit bug of Skulls not updating properly
-                if (state instanceof Skull) {
-                    Skull oldState = (Skull) state;
-                    Skull newState = (Skull) state.getBlock().getState();
-                    newState.setType(oldState.getType());
-                    newState.setBlockData(oldState.getBlockData());
-                    newState.setOwningPlayer(oldState.getOwningPlayer());
-                    newState.update();
-                }
+                World w = getWorld();
+                state.restore(w);
                 state = null;
                 if (otherHalfState != null) {
-                    otherHalfState.update(true);
-                    //Hack to fix a Bukkit bug of Skulls not updating properly
-                    if (otherHalfState instanceof Skull) {
-                        Skull oldState = (Skull) otherHalfState;
-                        Skull newState = (Skull) otherHalfState.getBlock().getState();
-                        newState.setOwningPlayer(oldState.getOwningPlayer());
-                        newState.setBlockData(oldState.getBlockData());
-                        newState.setData(oldState.getData());
-                        newState.update();
-                    }
+                    otherHalfState.restore(w);
                     otherHalfState = null;
                 }
+                invalidateKind();
                 chestsToRespawn.remove(this);
+                ChestRespawns.cancel(this);
             }
         }
     }
 
+    /**
+     * Returns true if the PhatLootChest has been broken and is waiting to respawn
+     *
+     * @return true if the chest is broken
+     */
+    public boolean isBroken() {
+        return state != null;
+    }
+
+    /**
+     * Saves the snapshots of this broken PhatLootChest so that it may respawn after a restart
+     *
+     * @param section The ConfigurationSection to save to
+     */
+    void saveSnapshots(ConfigurationSection section) {
+        state.save(section.createSection("Block"));
+        if (otherHalfState != null) {
+            otherHalfState.save(section.createSection("OtherHalf"));
+        }
+    }
+
+    /**
+     * Restores the snapshots of this PhatLootChest which were saved before a restart.
+     * The PhatLootChest is then broken and waiting to respawn
+     *
+     * @param section The ConfigurationSection which the snapshots were saved to
+     */
+    void loadSnapshots(ConfigurationSection section) {
+        state = BlockSnapshot.load(section.getConfigurationSection("Block"));
+        otherHalfState = BlockSnapshot.load(section.getConfigurationSection("OtherHalf"));
+        if (state != null) {
+            chestsToRespawn.add(this);
+            invalidateKind();
+        }
+    }
+
     /**
      * Creates an Inventory for the specified user and this PhatLootChest
      *
-     * @param user 'global' or the Player's uuid
+     * @param user LootTimes.GLOBAL or the Player's uuid
      * @param name The title of the Inventory
      * @return The new Inventory that was created
      */
-    public Inventory getInventory(String user, String name) {
+    public Inventory getInventory(UUID user, String name) {
         return getInventory(user, name, this);
     }
 
     /**
      * Creates an Inventory for the specified user
      *
-     * @param user 'global' or the Player's uuid
+     * @param user LootTimes.GLOBAL or the Player's uuid
      * @param name The title of the Inventory
      * @param chest The PhatLootChest to create the Inventory for
      * @return The new Inventory that was created
      */
-    public static Inventory getInventory(String user, String name, PhatLootChest chest) {
-        if (chest != null) {
+    public static Inventory getInventory(UUID user, String name, PhatLootChest chest) {
+        if (chest != null && chest.isDispenser()) {
+            //Keep the snapshot so that it may be reused to dispense the loot
             BlockState state = chest.getBlock().getState();
             switch (state.getType()) {
                 case DISPENSER:
+                    chest.lootState = state;
                     return ((Dispenser) state).getInventory();
                 case DROPPER:
+                    chest.lootState = state;
                     return ((Dropper) state).getInventory();
+                default:
+                    //The Block was changed without an event
+                    chest.invalidateKind();
+                    break;
             }
         }
 
-        //Create the custom key using the user and Block location
-        String key = user;
-        if (chest != null) {
-            key += '@' + chest.toString();
-        }
+        //Create the custom key using the user and chest id
+        ForgettableInventory.Key key = new ForgettableInventory.Key(user, chest == null ? -1 : chest.id);
 
         //Grab the custom Inventory belonging to the Player
         Inventory inventory;
         ForgettableInventory fInventory = ForgettableInventory.get(key);
         name = chestName.replace("<name>", ChatColor.translateAlternateColorCodes('&', name.replace('_', ' ')));
         if (fInventory == null) {
-            if (chest != null) {
-                Block block = chest.getBlock();
-                switch (block.getType()) {
-                case TRAPPED_CHEST:
-                case CHEST:
-                    inventory = ((Chest) block.getState()).getInventory();
-                    break;
-                default:
-                    inventory = null;
-                    break;
-                }
-            } else {
-                inventory = null;
-            }
-
-            //Create a new Inventory for the user
-            inventory = Bukkit.createInventory(null, inventory == null ? 27 : inventory.getSize(), name);
-            fInventory = new ForgettableInventory(key, inventory);
+            //Create a new Inventory for the user, it is only filled once it is needed
+            fInventory = new ForgettableInventory(key, chest == null ? 27 : chest.getInventorySize(), name);
         }
 
         inventory = fInventory.getInventory();
@@ -408,13 +965,18 @@ public class PhatLootChest {
      * @param inventory The Inventory to add the items to
      */
     public void addItems(Collection<ItemStack> itemList, Player player, Inventory inventory) {
-        for (ItemStack item : itemList) {
-            addItem(item, player, inventory);
+        BlockState blockState = getLootState();
+        lootState = null;
+        if (shuffleLoot && blockState == null) {
+            //Scatter the items throughout the Inventory in a single pass
+            for (ItemStack stack : LootPlacement.place(inventory, itemList)) {
+                overFlow(stack, player);
+            }
+            return;
         }
-        if (shuffleLoot) {
-            List<ItemStack> contents = Arrays.asList(inventory.getContents());
-            Collections.shuffle(contents);
-            inventory.setContents(contents.toArray(new ItemStack[0]));
+
+        for (ItemStack item : itemList) {
+            addItem(item, player, inventory, blockState);
         }
     }
 
@@ -426,6 +988,31 @@ public class PhatLootChest {
      * @param inventory The Inventory to add the item to
      */
     public void addItem(ItemStack item, Player player, Inventory inventory) {
+        addItem(item, player, inventory, getLootState());
+        lootState = null;
+    }
+
+    /**
+     * Returns a snapshot of the Dispenser or Dropper which is being looted
+     *
+     * @return The BlockState or null if this PhatLootChest is not a Dispenser or Dropper
+     */
+    private BlockState getLootState() {
+        if (!isDispenser()) {
+            return null;
+        }
+        return lootState == null ? getBlock().getState() : lootState;
+    }
+
+    /**
+     * Adds the ItemStack to the given Inventory
+     *
+     * @param item The ItemStack to add
+     * @param player The Player looting the Chest
+     * @param inventory The Inventory to add the item to
+     * @param blockState The snapshot of the Dispenser or Dropper or null if this is not one
+     */
+    private void addItem(ItemStack item, Player player, Inventory inventory, BlockState blockState) {
         /* Bukkit should be able to handle this */
         ////Make sure loots do not exceed the stack size
         //if (item.getAmount() > item.getMaxStackSize()) {
@@ -446,7 +1033,10 @@ public class PhatLootChest {
             }
         }
 
-        BlockState blockState = getBlock().getState();
+        if (blockState == null) {
+            return;
+        }
+
         switch (blockState.getType()) {
             case DISPENSER:
                 //Dispense until the Dispenser is empty
@@ -502,7 +1092,7 @@ public class PhatLootChest {
         openPhatLootChests.put(player.getUniqueId(), this);
         player.openInventory(inv);
 
-        switch (getBlock().getType()) {
+        switch (getKind()) {
             case TRAPPED_CHEST:
                 //Trigger redstone
                 for (Block block : findRedstone(getBlock(), false)) {
@@ -511,14 +1101,12 @@ public class PhatLootChest {
             case ENDER_CHEST:
             case CHEST:
                 //Play chest animations
-                Location loc = new Location(Bukkit.getWorld(world), x, y, z);
+                Location loc = new Location(getWorld(), x, y, z);
                 if (global) {
                     if (inv.getViewers().size() <= 1) { //First viewer
-                        //Play for each Player in the World
-                        for (Player p: player.getWorld().getPlayers()) {
-                            p.playSound(loc, Sound.BLOCK_CHEST_OPEN, SoundCategory.BLOCKS, 0.75F, 0.95F);
-                            ChestAnimations.openChest(getBlock());
-                        }
+                        //The animation is seen by everyone so it is only played once
+                        playSound(loc, Sound.BLOCK_CHEST_OPEN);
+                        ChestAnimations.openChest(getBlock());
                     }
                 } else {
                     //Play for only the individual Player
@@ -547,7 +1135,7 @@ public class PhatLootChest {
 
         Block block = getBlock();
         Location loc = block.getLocation();
-        switch (block.getType()) {
+        switch (getKind()) {
         case TRAPPED_CHEST:
             //Trigger redstone
             for (Block neighbor : findRedstone(getBlock(), true)) {
@@ -556,7 +1144,7 @@ public class PhatLootChest {
         case CHEST:
         case ENDER_CHEST:
             if (global) {
-                block.getWorld().playSound(loc, Sound.BLOCK_CHEST_CLOSE, SoundCategory.BLOCKS, 0.75F, 0.95F);
+                playSound(loc, Sound.BLOCK_CHEST_CLOSE);
                 ChestAnimations.closeChest(getBlock());
             } else {
                 //Play for only the individual Player
@@ -579,13 +1167,28 @@ public class PhatLootChest {
         }
     }
 
+    /**
+     * Plays the given chest Sound for each Player within the ChestSoundRadius
+     *
+     * @param loc The Location of the chest
+     * @param sound The Sound to play
+     */
+    private static void playSound(Location loc, Sound sound) {
+        double radiusSquared = soundRadius * soundRadius;
+        for (Player p : loc.getWorld().getPlayers()) {
+            if (p.getLocation().distanceSquared(loc) <= radiusSquared) {
+                p.playSound(loc, sound, SoundCategory.BLOCKS, 0.75F, 0.95F);
+            }
+        }
+    }
+
     /**
      * Returns the shortest amount of time until one of the linked PhatLoots resets
      *
      * @return The amount of time (in ticks) that the PhatLootChest should reset
      */
     public long getResetTime() {
-        return getResetTime(PhatLoots.getPhatLoots());
+        return getResetTime(Arrays.asList(linkedPhatLoots));
     }
 
     /**
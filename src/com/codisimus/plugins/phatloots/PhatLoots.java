@@ -2,7 +2,6 @@ package com.codisimus.plugins.phatloots;
 
 import com.codisimus.plugins.phatloots.commands.*;
 import com.codisimus.plugins.phatloots.conditions.*;
-import com.codisimus.plugins.phatloots.events.ChestRespawnEvent.RespawnReason;
 import com.codisimus.plugins.phatloots.gui.InventoryConditionListener;
 import com.codisimus.plugins.phatloots.gui.InventoryListener;
 import com.codisimus.plugins.phatloots.hook.PluginHookManager;
@@ -11,15 +10,17 @@ import com.codisimus.plugins.phatloots.loot.*;
 import com.codisimus.plugins.phatloots.regions.RegionHook;
 import com.codisimus.plugins.phatloots.regions.RegionToolsRegionHook;
 import com.codisimus.plugins.phatloots.regions.WorldGuardRegionHook;
+import com.codisimus.plugins.phatloots.storage.FlatFileStorage;
+import com.codisimus.plugins.phatloots.storage.LootStorage;
+import com.codisimus.plugins.phatloots.storage.SQLiteStorage;
 import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
-import com.google.common.io.Files;
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.milkbowl.vault.economy.Economy;
@@ -48,10 +49,15 @@ public class PhatLoots extends JavaPlugin {
     public static boolean mythicDropsSupport;
     public static boolean mythicMobsSupport;
     public static long autoSavePeriod;
+    public static int expiredLootTimesPerTick;
+    public static String storageType;
+    public static LootStorage storage;
     public static CommandHandler handler;
     public static final HashMap<String, RegionHook> regionHooks = new HashMap<>(); //Plugin Name -> RegionHook
     public static final EnumMap<Material, HashMap<String, String>> types = new EnumMap<>(Material.class); //Material -> World Name -> PhatLoot Name
     private static final HashMap<String, PhatLoot> phatLoots = new HashMap<>(); //PhatLoot Name -> PhatLoot
+    private static long nextExpiry = Long.MIN_VALUE; //No loot time expires before this time
+    private static ExecutorService saveExecutor; //Writes loot times to file off of the main thread
 
     private PluginHookManager hookManager;
 
@@ -65,19 +71,28 @@ public class PhatLoots extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        LootSimulation.shutdown();
         saveLootTimes();
 
-        //Respawn all chests
-        @SuppressWarnings("unchecked")
-        Collection<PhatLootChest> chests = (Collection<PhatLootChest>) PhatLootChest.chestsToRespawn.clone();
-        for (PhatLootChest chest : chests) {
-            chest.respawn(RespawnReason.PLUGIN_DISABLED);
+        //Wait for all loot times to be written
+        saveExecutor.shutdown();
+        try {
+            if (!saveExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                logger.severe("Timed out while saving loot times!");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (PhatLoot phatLoot : getPhatLoots()) {
+            phatLoot.closeLootTimes();
         }
+        storage.close();
     }
 
     @Override
     public void onEnable() {
         logger = getLogger();
+        saveExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "PhatLoots Save Thread"));
         plugin = this;
 
         /* Create data folders */
@@ -217,13 +232,25 @@ public class PhatLoots extends JavaPlugin {
         registerEvents();
 
         /* Load PhatLoot/Chest data */
+        storage = openStorage(storageType);
         load();
+        ChunkLinks.load();
+        //Load the broken chests before anything may save them
+        ChestRespawns.load();
+        PlayerLootTimes.load();
+        ChestRespawns.start();
+        ForgettableInventory.start();
 
         /* Start save repeating task */
         if (autoSavePeriod > 0) {
             this.getServer().getScheduler().runTaskTimer(this, PhatLoots::saveLootTimes, autoSavePeriod, autoSavePeriod);
         }
 
+        /* Start loot time clean up repeating task */
+        if (expiredLootTimesPerTick > 0) {
+            this.getServer().getScheduler().runTaskTimer(this, PhatLoots::cleanExpiredLootTimes, 1L, 1L);
+        }
+
         new Metrics(this, 5032);
     }
 
@@ -257,6 +284,8 @@ public class PhatLoots extends JavaPlugin {
         pm.registerEvents(new InventoryListener(), this);
         pm.registerEvents(new InventoryConditionListener(), this);
         pm.registerEvents(loadedListener = new LoadedPhatLootListener(this), this);
+        pm.registerEvents(new PlayerLootTimesListener(), this);
+        pm.registerEvents(new ChunkLinkListener(), this);
 
         if (pm.isPluginEnabled("Citizens")) {
             logger.info("Listening for Citizens NPC deaths");
@@ -395,25 +424,29 @@ public class PhatLoots extends JavaPlugin {
     }
 
     /**
-     * Loads each PhatLoot that has a LootTable file
+     * Loads each PhatLoot that has a LootTable in the LootStorage
      */
     public static void load() {
-        //Load each YAML file in the LootTables folder
-        File dir = new File(dataFolder, "LootTables");
-        if (!dir.isDirectory())
-            return;
-        File [] files = dir.listFiles(PhatLootsUtil.YAML_FILTER);
-        if (files == null)
+        //Load each LootTable of the LootStorage
+        Collection<String> names;
+        try {
+            names = storage.getLootTableNames();
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Failed to load loot tables from " + storage.getName() + " storage", ex);
             return;
+        }
         if (isDebug()) {
-            debug(files.length + " loot table(s) have been found in " + dir.getPath());
+            debug(names.size() + " loot table(s) have been found in " + storage.getName() + " storage");
         }
-        for (File file : files) {
+        for (String name : names) {
             long startTime = System.currentTimeMillis();
             try {
-                String name = file.getName();
-                name = name.substring(0, name.length() - PhatLootsUtil.YAML_EXTENSION.length());
-                YamlConfiguration config = loadConfig(file);
+                String data = storage.loadLootTable(name);
+                if (data == null) {
+                    continue;
+                }
+                YamlConfiguration config = new YamlConfiguration();
+                config.loadFromString(data);
 
                 //Ensure the PhatLoot name matches the file name
                 PhatLoot phatLoot = (PhatLoot) config.get(config.contains(name)
@@ -438,7 +471,7 @@ public class PhatLoots extends JavaPlugin {
                     }
                 }
             } catch (Exception ex) {
-                logger.log(Level.SEVERE, "Failed to load " + file.getName(), ex);
+                logger.log(Level.SEVERE, "Failed to load " + name, ex);
             }
         }
         if (isDebug()) {
@@ -492,9 +525,19 @@ public class PhatLoots extends JavaPlugin {
      */
     public static void removePhatLoot(PhatLoot phatLoot) {
         phatLoots.remove(phatLoot.name);
-        new File(dataFolder, "LootTables" + File.separator + phatLoot.name + PhatLootsUtil.YAML_EXTENSION).delete();
-        new File(dataFolder, "Chests" + File.separator + phatLoot.name + PhatLootsUtil.TEXT_EXTENSION).delete();
-        new File(dataFolder, "LootTimes" + File.separator + phatLoot.name + PhatLootsUtil.PROPERTIES_EXTENSION).delete();
+        phatLoot.unlinkChests();
+        phatLoot.closeLootTimes();
+
+        //The PhatLoot is deleted after any pending saves of its loot times
+        runSaveTask(() -> {
+            try {
+                storage.delete(phatLoot.name);
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Could not delete PhatLoot " + phatLoot.name, ex);
+            }
+            new File(dataFolder, "LootTimes" + File.separator + phatLoot.name + LootTimesFile.EXTENSION).delete();
+            new File(dataFolder, "LootTimes" + File.separator + phatLoot.name + LootTimesFile.CHESTS_EXTENSION).delete();
+        });
     }
 
     /**
@@ -580,15 +623,11 @@ public class PhatLoots extends JavaPlugin {
     public static LinkedList<PhatLoot> getExplicitlyLinkedPhatLoots(Block block) {
         LinkedList<PhatLoot> phatLootList = new LinkedList<>();
 
-        if (PhatLootsUtil.isLinkableType(block)) {
-            block = PhatLootsUtil.getLeftSide(block);
-            if (PhatLootChest.isPhatLootChest(block)) {
-                PhatLootChest chest = PhatLootChest.getChest(block);
-                for (PhatLoot phatLoot : phatLoots.values()) {
-                    if (phatLoot.containsChest(chest)) {
-                        phatLootList.add(phatLoot);
-                    }
-                }
+        //Avoid reading the BlockState of Blocks which are not linked
+        if (PhatLootsUtil.isLinkableType(block) && PhatLootChest.mayBePhatLootChest(block)) {
+            PhatLootChest chest = PhatLootChest.findChest(PhatLootsUtil.getLeftSide(block));
+            if (chest != null) {
+                Collections.addAll(phatLootList, chest.getLinkedPhatLootArray());
             }
         }
 
@@ -658,7 +697,8 @@ public class PhatLoots extends JavaPlugin {
     }
 
     /**
-     * Saves Loot times of each PhatLoot to file
+     * Saves Loot times of each PhatLoot to file.
+     * Only PhatLoots whose loot times have changed are written
      */
     public static void saveLootTimes() {
         for (PhatLoot phatLoot : getPhatLoots()) {
@@ -666,6 +706,73 @@ public class PhatLoots extends JavaPlugin {
             phatLoot.clean(null);
             phatLoot.saveLootTimes();
         }
+        ChunkLinks.savePending();
+        PlayerLootTimes.saveAll();
+        ChestRespawns.save();
+    }
+
+    /**
+     * Removes loot times which have cooled down.
+     * At most ExpiredLootTimesPerTick loot times are removed each time this is called
+     */
+    public static void cleanExpiredLootTimes() {
+        //Ticks before the earliest expiry do not look at any PhatLoot
+        if (System.currentTimeMillis() <= nextExpiry) {
+            return;
+        }
+
+        int budget = expiredLootTimesPerTick;
+        long next = Long.MAX_VALUE;
+        for (PhatLoot phatLoot : getPhatLoots()) {
+            budget -= phatLoot.cleanExpired(budget);
+            if (budget <= 0) {
+                //Continue with the next tick
+                return;
+            }
+            next = Math.min(next, phatLoot.getNextExpiry());
+        }
+        nextExpiry = next;
+    }
+
+    /**
+     * Makes sure that expired loot times are cleaned up once the given time has passed
+     *
+     * @param time The time at which a loot time expires
+     */
+    static void queueExpiry(long time) {
+        if (time < nextExpiry) {
+            nextExpiry = time;
+        }
+    }
+
+    /**
+     * Runs the given task on the save thread.
+     * Tasks are run in the order that they are given
+     *
+     * @param task The task which writes to file
+     */
+    public static void runSaveTask(Runnable task) {
+        if (saveExecutor == null || saveExecutor.isShutdown()) {
+            task.run();
+        } else {
+            saveExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Waits until all pending save tasks have finished
+     */
+    public static void waitForSaves() {
+        if (saveExecutor == null || saveExecutor.isShutdown()) {
+            return;
+        }
+        try {
+            saveExecutor.submit(() -> {}).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.log(Level.SEVERE, "Save Failed!", ex);
+        }
     }
 
     /**
@@ -682,10 +789,23 @@ public class PhatLoots extends JavaPlugin {
      */
     public static void rl(CommandSender sender) {
         saveLootTimes();
+        waitForSaves();
+        for (PhatLoot phatLoot : getPhatLoots()) {
+            phatLoot.closeLootTimes();
+        }
 
         phatLoots.clear();
+        PhatLootChest.unlinkAll();
+        ChunkLinks.clear();
+        PlayerLootTimes.clear();
         plugin.reloadConfig();
+        if (!storage.getName().equalsIgnoreCase(storageType)) {
+            storage.close();
+            storage = openStorage(storageType);
+        }
         load();
+        ChunkLinks.load();
+        PlayerLootTimes.load();
         plugin.loadedListener.reload();
 
         logger.info("PhatLoots reloaded");
@@ -695,38 +815,23 @@ public class PhatLoots extends JavaPlugin {
     }
 
     /**
-     * Does the same as getConfig() but for the given config file.
+     * Opens the LootStorage of the given type.
+     * Flat files are used if the type is unknown or the storage cannot be opened
      *
-     * @param file The file to load
-     * @return The YamlConfiguration loaded
+     * @param type The name of the LootStorage such as FlatFile or SQLite
+     * @return The opened LootStorage
      */
-    private static YamlConfiguration loadConfig(File file) {
-        YamlConfiguration fileConfiguration = new YamlConfiguration();
-        try {
-            if (isValidUTF8(Files.toByteArray(file))) {
-                fileConfiguration.loadFromString(Files.toString(file, StandardCharsets.UTF_8));
-            } else {
-                fileConfiguration.load(file);
+    public static LootStorage openStorage(String type) {
+        if (SQLiteStorage.NAME.equalsIgnoreCase(type)) {
+            try {
+                return new SQLiteStorage(new File(dataFolder, "PhatLoots.db"));
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Could not open SQLite storage, using FlatFile storage instead", ex);
             }
-        } catch (Exception ex) {
-            logger.log(Level.SEVERE, "§4Could not load data from " + file, ex);
-        }
-        return fileConfiguration;
-    }
-
-    /**
-     * Checks if the given byte array is UTF-8 encoded.
-     *
-     * @param bytes The array of bytes to check for validity
-     * @return true when validly UTF8 encoded
-     */
-    private static boolean isValidUTF8(byte[] bytes) {
-        try {
-            Charset.availableCharsets().get("UTF-8").newDecoder().decode(ByteBuffer.wrap(bytes));
-            return true;
-        } catch (CharacterCodingException e) {
-            return false;
+        } else if (type != null && !FlatFileStorage.NAME.equalsIgnoreCase(type)) {
+            logger.warning("Unknown Storage type " + type + ", using FlatFile storage instead");
         }
+        return new FlatFileStorage();
     }
 
     public static boolean isDebug() {
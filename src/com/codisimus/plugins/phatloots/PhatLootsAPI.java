@@ -1,6 +1,7 @@
 package com.codisimus.plugins.phatloots;
 
 import com.codisimus.plugins.phatloots.loot.LootBundle;
+import com.codisimus.plugins.phatloots.loot.LootHistogram;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -49,6 +50,51 @@ public class PhatLootsAPI {
                : phatLoot.rollForLoot();
     }
 
+    /**
+     * Rolls for loot of the specified loot tables the given number of times.
+     * An empty list is returned if the PhatLoot of the given name does not exist
+     *
+     * @param phatLootName The name of the specified loot tables
+     * @param times The number of times to roll
+     * @return The loot that was given from each roll
+     */
+    public static List<LootBundle> rollForLoot(String phatLootName, int times) {
+        PhatLoot phatLoot = PhatLoots.getPhatLoot(phatLootName);
+        return phatLoot == null
+               ? new ArrayList<>()
+               : phatLoot.rollForLoot(times, 0);
+    }
+
+    /**
+     * Rolls for loot of the specified loot tables the given number of times and adds all of it to the given LootBundle.
+     * Nothing is added if the PhatLoot of the given name does not exist
+     *
+     * @param phatLootName The name of the specified loot tables
+     * @param times The number of times to roll
+     * @param lootBundle The LootBundle to add the loot to, a LootHistogram only keeps the totals
+     * @return The given LootBundle
+     */
+    public static LootBundle rollInto(String phatLootName, int times, LootBundle lootBundle) {
+        PhatLoot phatLoot = PhatLoots.getPhatLoot(phatLootName);
+        return phatLoot == null
+               ? lootBundle
+               : phatLoot.rollInto(lootBundle, times, 0);
+    }
+
+    /**
+     * Rolls for loot of the specified loot tables the given number of times and totals the loot.
+     * An empty LootHistogram is returned if the PhatLoot of the given name does not exist
+     *
+     * @param phatLootName The name of the specified loot tables
+     * @param times The number of times to roll
+     * @return The total amount of each item, money, and experience that was given
+     */
+    public static LootHistogram rollForHistogram(String phatLootName, int times) {
+        LootHistogram histogram = new LootHistogram();
+        rollInto(phatLootName, times, histogram);
+        return histogram;
+    }
+
     /**
      * Returns all PhatLoots that are linked to the given Block
      *
@@ -5,6 +5,8 @@ import com.codisimus.plugins.phatloots.listeners.MobListener;
 import com.codisimus.plugins.phatloots.listeners.PhatLootsListener;
 import com.codisimus.plugins.phatloots.loot.Item;
 import com.codisimus.plugins.phatloots.loot.LootCollection;
+import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
+import com.codisimus.plugins.phatloots.util.RandomSource;
 import java.io.File;
 import java.util.*;
 import java.util.logging.Level;
@@ -237,14 +239,30 @@ public class PhatLootsConfig {
         LootCommand.setUnlockable = config.getBoolean("SetChestsAsUnlockable");
         PhatLoot.decimals = config.getBoolean("DivideMoneyAmountBy100");
         PhatLoot.soundOnAutoLoot = config.getBoolean("PlaySoundOnAutoLoot");
+        PhatLoot.alwaysResyncInventory = config.getBoolean("AlwaysResyncInventory", false);
         PhatLootChest.useBreakAndRepawn = config.getBoolean("UseBreakAndRespawn");
         PhatLootChest.soundOnBreak = config.getBoolean("PlaySoundOnChestBreak");
+        PhatLootChest.soundRadius = config.getDouble("ChestSoundRadius", 16);
+        ChestRespawns.respawnsPerTick = config.getInt("RespawnsPerTick", 20);
         PhatLootChest.shuffleLoot = config.getBoolean("ShuffleLoot");
         LootCollection.allowDuplicates = config.getBoolean("AllowDuplicateItemsFromCollections");
+        PhatLootsUtil.setRandomSource(config.isInt("RandomSeed") || config.isLong("RandomSeed")
+                                      ? RandomSource.seeded(config.getLong("RandomSeed"))
+                                      : RandomSource.perThread());
         ForgettableInventory.delay = config.getInt("ForgetInventoryTime") * 20L;
+        ForgettableInventory.maxInventories = config.getInt("MaxInventories", 0);
         PhatLoot.unlink = config.getBoolean("UnlinkGlobalChestsThatNeverReset");
         PhatLoot.commandCooldown = config.getBoolean("ApplyCooldownToCommandLoot");
         PhatLoots.autoSavePeriod = config.getInt("AutoSavePeriod") * 20L;
+        PhatLoots.expiredLootTimesPerTick = config.getInt("ExpiredLootTimesPerTick");
+        PhatLoot.binaryLootTimes = config.getBoolean("BinaryLootTimes");
+        PhatLoots.storageType = config.getString("Storage");
+        PlayerLootTimes.enabled = config.getBoolean("LoadPlayerLootTimesOnJoin");
+        if (PlayerLootTimes.enabled && PhatLoot.binaryLootTimes) {
+            PhatLoots.logger.warning("BinaryLootTimes cannot be used with LoadPlayerLootTimesOnJoin and has been turned off");
+            PhatLoot.binaryLootTimes = false;
+        }
+        ChunkLinks.enabled = config.getBoolean("ChunkLinks");
         PhatLootsListener.autoBreakOnPunch = config.getBoolean("AutoBreakOnPunch");
 
         
@@ -0,0 +1,298 @@
+package com.codisimus.plugins.phatloots;
+
+import com.codisimus.plugins.phatloots.storage.LootStorage;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+/**
+ * Keeps the loot times of players in memory only while they are online.
+ * Loot times of each player are saved apart from their PhatLoots, loaded when the player logs in
+ * and removed from memory when the player quits. Loot times of global PhatLoots are always in memory
+ *
+ * @author Codisimus
+ */
+public class PlayerLootTimes {
+    static boolean enabled; //True if loot times of players should only be loaded while they are online
+    private static final Map<UUID, List<LootTime>> loaded = new ConcurrentHashMap<>(); //Loaded during login, applied on join
+    private static final HashMap<UUID, List<LootTime>> unresolved = new HashMap<>(); //Times of online players for chests that are not loaded
+    private static final HashSet<UUID> dirty = new HashSet<>(); //Online players whose loot times have changed since they were saved
+    private static final Map<UUID, CompletableFuture<Void>> pendingWrites = new ConcurrentHashMap<>(); //User -> Last queued write of their loot times
+    private static final AtomicInteger resets = new AtomicInteger(); //Incremented each time loot times of every player are reset
+    private static volatile CompletableFuture<Void> pendingReset = CompletableFuture.completedFuture(null); //Last queued reset
+
+    /**
+     * A single loot time of a player
+     *
+     * @param phatLoot The name of the PhatLoot
+     * @param chest The chest in the form world'x'y'z or null if the time is not for a chest
+     * @param time The time that the player looted
+     */
+    private record LootTime(String phatLoot, String chest, long time) {}
+
+    /**
+     * Returns true if loot times of players are only kept in memory while they are online
+     *
+     * @return true if loot times are loaded when players join
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads the loot times of the given player from the LootStorage.
+     * This is called from the login thread so that the times are ready by the time the player joins
+     *
+     * @param user The UUID of the player who is logging in
+     */
+    public static void loadOnLogin(UUID user) {
+        int resetCount;
+        do {
+            resetCount = resets.get();
+            //Make sure that the times which were saved when the player last quit and any resets have been written
+            CompletableFuture<Void> written = pendingWrites.get(user);
+            if (written != null) {
+                written.join();
+            }
+            pendingReset.join();
+            loaded.put(user, read(user));
+            //Read again if a reset started after the times were read since it may not have removed them from loaded
+        } while (resetCount != resets.get());
+    }
+
+    /**
+     * Discards loot times which were loaded for a player whose login was denied
+     *
+     * @param user The UUID of the player
+     */
+    public static void cancelLogin(UUID user) {
+        loaded.remove(user);
+    }
+
+    /**
+     * Adds the loot times of the given player to their PhatLoots
+     *
+     * @param player The Player who joined
+     */
+    public static void join(Player player) {
+        UUID user = player.getUniqueId();
+        List<LootTime> times = loaded.remove(user);
+        if (times == null) {
+            //The player logged in before PhatLoots was enabled
+            times = read(user);
+        }
+
+        for (LootTime lootTime : times) {
+            PhatLoot phatLoot = PhatLoots.getPhatLoot(lootTime.phatLoot());
+            if (phatLoot != null && !phatLoot.putPlayerLootTime(user, lootTime.chest(), lootTime.time())) {
+                //Keep the time so that it is not lost when the player is saved
+                unresolved.computeIfAbsent(user, key -> new ArrayList<>()).add(lootTime);
+            }
+        }
+    }
+
+    /**
+     * Saves the loot times of the given player and removes them from memory
+     *
+     * @param player The Player who quit
+     */
+    public static void quit(Player player) {
+        UUID user = player.getUniqueId();
+        if (dirty.remove(user)) {
+            save(user);
+        }
+        for (PhatLoot phatLoot : PhatLoots.getPhatLoots()) {
+            phatLoot.evictPlayerLootTimes(user);
+        }
+        unresolved.remove(user);
+    }
+
+    /**
+     * Flags the loot times of the given player as changed so that they are saved
+     *
+     * @param user The UUID of the player
+     */
+    static void setDirty(UUID user) {
+        dirty.add(user);
+    }
+
+    /**
+     * Saves the loot times of each online player whose loot times have changed
+     */
+    static void saveAll() {
+        for (UUID user : dirty) {
+            save(user);
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Removes the loot times of every player which are selected by the given filter from a PhatLoot.
+     * This includes the loot times of offline players which are only in the LootStorage
+     *
+     * @param name The name of the PhatLoot
+     * @param filter The filter of the loot times to remove
+     */
+    static void reset(String name, LootStorage.LootTimeFilter filter) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        pendingReset = done;
+        resets.incrementAndGet();
+        for (Map.Entry<UUID, List<LootTime>> entry : unresolved.entrySet()) {
+            removeLootTimes(entry.getKey(), entry.getValue(), name, filter);
+        }
+        for (Map.Entry<UUID, List<LootTime>> entry : loaded.entrySet()) {
+            removeLootTimes(entry.getKey(), entry.getValue(), name, filter);
+        }
+        PhatLoots.runSaveTask(() -> {
+            try {
+                PhatLoots.storage.removePlayerLootTimes(name, filter);
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Could not reset loot times of PhatLoot " + name, ex);
+            } finally {
+                done.complete(null);
+            }
+        });
+    }
+
+    private static void removeLootTimes(UUID user, List<LootTime> times, String name, LootStorage.LootTimeFilter filter) {
+        times.removeIf(lootTime -> lootTime.phatLoot().equals(name)
+                                   && filter.matches(lootTime.chest(), user.getMostSignificantBits(),
+                                                     user.getLeastSignificantBits()));
+    }
+
+    /**
+     * Prepares loot times of players after the PhatLoots have been loaded.
+     * Loot times of players are moved between the PhatLoots and the player loot times
+     * if this setting has been changed and then the loot times of online players are loaded
+     */
+    static void load() {
+        if (enabled) {
+            separate();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                join(player);
+            }
+            return;
+        }
+
+        try {
+            merge();
+        } catch (IOException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Could not convert the loot times of players!", ex);
+        }
+    }
+
+    /**
+     * Clears all loot times of players which are in memory
+     */
+    static void clear() {
+        loaded.clear();
+        unresolved.clear();
+        dirty.clear();
+    }
+
+    /**
+     * Moves loot times of players out of the PhatLoots and into the player loot times
+     */
+    private static void separate() {
+        HashMap<UUID, List<LootTime>> separated = new HashMap<>();
+        for (PhatLoot phatLoot : PhatLoots.getPhatLoots()) {
+            phatLoot.removePlayerLootTimes((chest, most, least, time) ->
+                    separated.computeIfAbsent(new UUID(most, least), key -> new ArrayList<>())
+                             .add(new LootTime(phatLoot.name, chest, time)));
+        }
+        if (separated.isEmpty()) {
+            return;
+        }
+
+        //Player loot times are written before the PhatLoots so that no times are lost
+        for (Map.Entry<UUID, List<LootTime>> entry : separated.entrySet()) {
+            List<LootTime> times = read(entry.getKey());
+            times.addAll(entry.getValue());
+            write(entry.getKey(), times);
+        }
+        PhatLoots.saveLootTimes();
+        PhatLoots.logger.info("Moved loot times of " + separated.size() + " players out of the PhatLoot loot times");
+    }
+
+    /**
+     * Moves all player loot times back into their PhatLoots
+     *
+     * @throws IOException if the player loot times could not be read
+     */
+    private static void merge() throws IOException {
+        Collection<UUID> users = PhatLoots.storage.getPlayerLootTimeUsers();
+        if (users.isEmpty()) {
+            return;
+        }
+
+        for (UUID user : users) {
+            for (LootTime lootTime : read(user)) {
+                PhatLoot phatLoot = PhatLoots.getPhatLoot(lootTime.phatLoot());
+                if (phatLoot != null) {
+                    phatLoot.restorePlayerLootTime(user, lootTime.chest(), lootTime.time());
+                }
+            }
+        }
+
+        //PhatLoots are written before the player loot times are deleted so that no times are lost
+        PhatLoots.saveLootTimes();
+        for (UUID user : users) {
+            write(user, Collections.emptyList());
+        }
+        PhatLoots.logger.info("Moved loot times of " + users.size() + " players back into the PhatLoot loot times");
+    }
+
+    /**
+     * Saves the loot times of the given online player on the save thread
+     *
+     * @param user The UUID of the player
+     */
+    private static void save(UUID user) {
+        List<LootTime> times = new ArrayList<>(unresolved.getOrDefault(user, Collections.emptyList()));
+        for (PhatLoot phatLoot : PhatLoots.getPhatLoots()) {
+            phatLoot.forEachPlayerLootTime(user, (chest, time) -> times.add(new LootTime(phatLoot.name, chest, time)));
+        }
+        write(user, times);
+    }
+
+    /**
+     * Writes the given loot times of the given player on the save thread.
+     * Writes run in order so a login only has to wait for the last write of that player
+     *
+     * @param user The UUID of the player
+     * @param times The loot times which replace the saved loot times of the player
+     */
+    private static void write(UUID user, List<LootTime> times) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        pendingWrites.put(user, written);
+        PhatLoots.runSaveTask(() -> {
+            try {
+                PhatLoots.storage.savePlayerLootTimes(user, consumer -> {
+                    for (LootTime lootTime : times) {
+                        consumer.accept(lootTime.phatLoot(), lootTime.chest(), lootTime.time());
+                    }
+                });
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Could not save loot times of " + user, ex);
+            } finally {
+                written.complete(null);
+                pendingWrites.remove(user, written);
+            }
+        });
+    }
+
+    private static List<LootTime> read(UUID user) {
+        List<LootTime> times = new ArrayList<>();
+        try {
+            PhatLoots.storage.loadPlayerLootTimes(user, (phatLoot, chest, time) -> times.add(new LootTime(phatLoot, chest, time)));
+        } catch (IOException ex) {
+            PhatLoots.logger.log(Level.SEVERE, "Could not load loot times of " + user, ex);
+        }
+        return times;
+    }
+}
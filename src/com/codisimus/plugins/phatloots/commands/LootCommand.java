@@ -1,5 +1,8 @@
 package com.codisimus.plugins.phatloots.commands;
 
+import com.codisimus.plugins.phatloots.ChestRespawns;
+import com.codisimus.plugins.phatloots.ForgettableInventory;
+import com.codisimus.plugins.phatloots.LootSimulation;
 import com.codisimus.plugins.phatloots.PhatLoot;
 import com.codisimus.plugins.phatloots.PhatLoots;
 import com.codisimus.plugins.phatloots.PhatLootsConfig;
@@ -11,11 +14,15 @@ import com.codisimus.plugins.phatloots.gui.InventoryListener;
 import com.codisimus.plugins.phatloots.loot.Experience;
 import com.codisimus.plugins.phatloots.loot.LootCollection;
 import com.codisimus.plugins.phatloots.loot.Money;
+import com.codisimus.plugins.phatloots.storage.LootStorage;
+import com.codisimus.plugins.phatloots.storage.StorageMigration;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -304,10 +311,7 @@ public class LootCommand {
         permission = "phatloots.time"
     )
     public boolean time(CommandSender sender, PhatLoot phatLoot, int days, int hours, int minutes, int seconds) {
-        phatLoot.days = days;
-        phatLoot.hours = hours;
-        phatLoot.minutes = minutes;
-        phatLoot.seconds = seconds;
+        phatLoot.setResetTime(days, hours, minutes, seconds);
         sender.sendMessage("§5Reset time for PhatLoot §6" + phatLoot.name
                 + "§5 has been set to §6" + days + " days, "
                 + hours + " hours, " + minutes + " minutes, and "
@@ -325,10 +329,7 @@ public class LootCommand {
     @CodCommand(command = "time", weight = 50.2)
     public boolean time(CommandSender sender, PhatLoot phatLoot, String string) {
         if (string.equals("never")) {
-            phatLoot.days = -1;
-            phatLoot.hours = -1;
-            phatLoot.minutes = -1;
-            phatLoot.seconds = -1;
+            phatLoot.setResetTime(-1, -1, -1, -1);
             sender.sendMessage("§5PhatLoot §6" + phatLoot.name
                     + "§5 has been set to §6never§5 reset");
             phatLoot.save();
@@ -874,4 +875,88 @@ public class LootCommand {
         sender.sendMessage(ChatColor.GREEN + "Saved all loot tables successfully!");
         return true;
     }
+
+    @CodCommand(
+            command = "migrate",
+            weight = 210,
+            usage = "§2<command> <FlatFile|SQLite>§b Copy all PhatLoot data to the given storage type",
+            permission = "phatloots.migrate"
+    )
+    public boolean migrate(CommandSender sender, String type) {
+        if (PhatLoots.storage.getName().equalsIgnoreCase(type)) {
+            sender.sendMessage("§4PhatLoot data is already saved in §6" + PhatLoots.storage.getName() + "§4 storage");
+            return true;
+        }
+        if (PhatLoot.binaryLootTimes) {
+            sender.sendMessage("§4Set §6BinaryLootTimes§4 to false and reload before migrating");
+            return true;
+        }
+
+        LootStorage target = PhatLoots.openStorage(type);
+        if (!target.getName().equalsIgnoreCase(type)) {
+            target.close();
+            sender.sendMessage("§4Could not open §6" + type + "§4 storage, see the console for details");
+            return true;
+        }
+
+        //Write everything to the current storage and then copy it once the pending saves are done
+        PhatLoots.saveAll();
+        LootStorage source = PhatLoots.storage;
+        sender.sendMessage("§5Migrating PhatLoot data to §6" + target.getName() + "§5 storage...");
+        PhatLoots.runSaveTask(() -> {
+            String message;
+            try {
+                int count = StorageMigration.migrate(source, target);
+                message = "§6" + count + "§5 PhatLoots were copied to §6" + target.getName()
+                          + "§5 storage, set §6Storage§5 in the config.yml and reload to use it";
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Migration Failed!", ex);
+                message = "§4Migration failed, see the console for details";
+            }
+            target.close();
+
+            String result = message;
+            Bukkit.getScheduler().runTask(PhatLoots.plugin, () -> sender.sendMessage(result));
+        });
+        return true;
+    }
+
+    @CodCommand(
+            command = "stats",
+            weight = 220,
+            usage = "§2<command>§b Show how many inventories and chest respawns are in memory",
+            permission = "phatloots.stats"
+    )
+    public boolean stats(CommandSender sender) {
+        sender.sendMessage("§5Inventories in memory: §6" + ForgettableInventory.size());
+        sender.sendMessage("§5Inventories forgotten: §6" + ForgettableInventory.getExpiredCount()
+                           + "§5 expired, §6" + ForgettableInventory.getEvictedCount() + "§5 evicted");
+        sender.sendMessage("§5Chests waiting to respawn: §6" + ChestRespawns.size());
+        return true;
+    }
+
+    @CodCommand(
+            command = "simulate",
+            weight = 230,
+            usage = "§2<command> <PhatLoot> <Rolls> [LootingBonus]§b Roll for a PhatLoot many times and show the odds of each loot",
+            permission = "phatloots.simulate"
+    )
+    public boolean simulate(CommandSender sender, PhatLoot phatLoot, int rolls) {
+        return simulate(sender, phatLoot, rolls, 0);
+    }
+    @CodCommand(command = "simulate", weight = 230.1)
+    public boolean simulate(CommandSender sender, PhatLoot phatLoot, int rolls, double lootingBonus) {
+        if (rolls <= 0) {
+            sender.sendMessage("§4The number of rolls must be positive");
+            return true;
+        }
+
+        //Rolls are made off of the main thread and the results are sent once they are done
+        if (!LootSimulation.start(phatLoot, rolls, lootingBonus, lines -> lines.forEach(sender::sendMessage))) {
+            sender.sendMessage("§4A simulation is already running, please wait for it to finish");
+            return true;
+        }
+        sender.sendMessage("§5Simulating §6" + rolls + "§5 rolls of §6" + phatLoot.name + "§5...");
+        return true;
+    }
 }
@@ -317,14 +317,11 @@ public class InventoryListener implements Listener {
                 case SIZE - 1: //Toggle Global/Round or Modify Reset Time
                     if (tool.getID() == MODIFY_AMOUNT) {
                         if (amount == 0) {
-                            phatLoot.days = 0;
-                            phatLoot.hours = 0;
-                            phatLoot.minutes = 0;
-                            phatLoot.seconds = 0;
+                            phatLoot.setResetTime(0, 0, 0, 0);
                         } else if (both) {
-                            phatLoot.hours += amount;
+                            phatLoot.setResetTime(phatLoot.days, phatLoot.hours + amount, phatLoot.minutes, phatLoot.seconds);
                         } else {
-                            phatLoot.minutes += amount;
+                            phatLoot.setResetTime(phatLoot.days, phatLoot.hours, phatLoot.minutes + amount, phatLoot.seconds);
                         }
                     } else if (event.getClick() == ClickType.LEFT) {
                         phatLoot.global = !phatLoot.global;
@@ -0,0 +1,26 @@
+package com.codisimus.plugins.phatloots.listeners;
+
+import com.codisimus.plugins.phatloots.ChunkLinks;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+/**
+ * Links the PhatLootChests of Chunks as they load and unlinks them as they unload
+ *
+ * @author Codisimus
+ */
+public class ChunkLinkListener implements Listener {
+    //Links must be loaded before any other listener looks up the PhatLootChests of the Chunk
+    @EventHandler (priority = EventPriority.LOWEST)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        ChunkLinks.chunkLoaded(event.getChunk());
+    }
+
+    @EventHandler (priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        ChunkLinks.chunkUnloaded(event.getChunk());
+    }
+}
@@ -87,16 +87,11 @@ public class LoadedPhatLootListener implements Listener {
 
     private void loadedChunk(Chunk chunk) {
         LoadedChunk loaded = new LoadedChunk(chunk);
-        for (PhatLootChest chest : PhatLootChest.getChests()) {
-            Block block = chest.getBlock();
-            Location loc = block.getLocation();
-            int chunkX = loc.getBlockX() >> 4;
-            int chunkZ = loc.getBlockZ() >> 4;
-            if (chunkX == chunk.getX() && chunkZ == chunk.getZ() && chunk.getWorld() == loc.getWorld()) {
-                PhatLootChestParticles particles = loadedChest(chest);
-                if (particles != null) {
-                    loaded.add(particles);
-                }
+        // only the chests within this chunk need to be checked
+        for (PhatLootChest chest : PhatLootChest.getChests(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            PhatLootChestParticles particles = loadedChest(chest);
+            if (particles != null) {
+                loaded.add(particles);
             }
         }
         if (!loaded.chests.isEmpty()) {
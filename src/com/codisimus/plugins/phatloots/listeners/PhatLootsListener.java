@@ -7,11 +7,17 @@ import org.bukkit.block.Block;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.Event.Result;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.EquipmentSlot;
 
 /**
@@ -69,10 +75,15 @@ public class PhatLootsListener implements Listener {
             Player player = (Player) human;
             if (PhatLootChest.openPhatLootChests.containsKey(player.getUniqueId())) {
                 PhatLootChest chest = PhatLootChest.openPhatLootChests.get(player.getUniqueId());
-                boolean global = ForgettableInventory.has("global@" + chest.toString());
+                boolean global = ForgettableInventory.has(new ForgettableInventory.Key(LootTimes.GLOBAL, chest.getId()));
                 chest.closeInventory(player, event.getInventory(), global);
             }
         }
+
+        //Only keep the items of the virtual Inventory until it is opened again
+        if (event.getInventory().getHolder() instanceof ForgettableInventory fInventory) {
+            fInventory.release(human);
+        }
     }
 
     /**
@@ -110,4 +121,70 @@ public class PhatLootsListener implements Listener {
             phatLoot.saveChests();
         }
     }
+
+    /**
+     * Forgets the cached kind of any PhatLootChest which a placed Block may have changed
+     *
+     * @param event The BlockPlaceEvent that occurred
+     */
+    @EventHandler (ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockPlaced(BlockPlaceEvent event) {
+        PhatLootChest.invalidateKind(event.getBlock());
+    }
+
+    /**
+     * Forgets the cached kind of any PhatLootChest which a broken Block may have changed
+     *
+     * @param event The BlockBreakEvent that occurred
+     */
+    @EventHandler (ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockBroken(BlockBreakEvent event) {
+        PhatLootChest.invalidateKind(event.getBlock());
+    }
+
+    /**
+     * Forgets the cached kind of any PhatLootChest which an explosion may have changed
+     *
+     * @param event The BlockExplodeEvent that occurred
+     */
+    @EventHandler (ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            PhatLootChest.invalidateKind(block);
+        }
+    }
+
+    /**
+     * Forgets the cached kind of any PhatLootChest which an explosion may have changed
+     *
+     * @param event The EntityExplodeEvent that occurred
+     */
+    @EventHandler (ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            PhatLootChest.invalidateKind(block);
+        }
+    }
+
+    /**
+     * Forgets the cached kind of each PhatLootChest in the loaded Chunk
+     * and respawns chests which came due while the Chunk was not loaded
+     *
+     * @param event The ChunkLoadEvent that occurred
+     */
+    @EventHandler (priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        PhatLootChest.invalidateKinds(event.getChunk());
+        ChestRespawns.chunkLoaded(event.getChunk());
+    }
+
+    /**
+     * Releases the unloaded World from the PhatLootChests within it
+     *
+     * @param event The WorldUnloadEvent that occurred
+     */
+    @EventHandler (ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        PhatLootChest.unloadWorld(event.getWorld());
+    }
 }
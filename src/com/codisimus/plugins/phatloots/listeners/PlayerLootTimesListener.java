@@ -0,0 +1,53 @@
+package com.codisimus.plugins.phatloots.listeners;
+
+import com.codisimus.plugins.phatloots.PlayerLootTimes;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Loads the loot times of players as they log in and removes them from memory when they quit
+ *
+ * @author Codisimus
+ */
+public class PlayerLootTimesListener implements Listener {
+    @EventHandler (priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (!PlayerLootTimes.isEnabled()) {
+            return;
+        }
+
+        //Loot times are only needed if the player is allowed to join
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            PlayerLootTimes.loadOnLogin(event.getUniqueId());
+        } else {
+            PlayerLootTimes.cancelLogin(event.getUniqueId());
+        }
+    }
+
+    @EventHandler (priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        //The player may still be denied after their loot times were loaded, in which case they never join
+        if (PlayerLootTimes.isEnabled() && event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            PlayerLootTimes.cancelLogin(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler (priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (PlayerLootTimes.isEnabled()) {
+            PlayerLootTimes.join(event.getPlayer());
+        }
+    }
+
+    @EventHandler (priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        if (PlayerLootTimes.isEnabled()) {
+            PlayerLootTimes.quit(event.getPlayer());
+        }
+    }
+}
@@ -121,6 +121,16 @@ public class Gem extends Loot {
         }
     }
 
+    /**
+     * Gems are always external since they are built by MythicDrops
+     *
+     * @return true
+     */
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
     /**
      * Returns the information of the Gem in the form of an ItemStack
      *
@@ -201,6 +201,28 @@ public class Item extends Loot {
         lootBundle.addItem(getItem());
     }
 
+    /**
+     * Returns a copy of the Item with its own clone of the ItemStack
+     *
+     * @return A snapshot of the Item
+     */
+    @Override
+    public Item snapshot() {
+        Item copy = (Item) super.snapshot();
+        copy.item = item.clone();
+        return copy;
+    }
+
+    /**
+     * An Item is external if it has Random Lore since that is read from a file each time
+     *
+     * @return true if the Item has Random Lore
+     */
+    @Override
+    public boolean isExternal() {
+        return randomLore;
+    }
+
     /**
      * Returns the information of the Item in the form of an ItemStack
      *
@@ -11,7 +11,7 @@ import org.bukkit.inventory.ItemStack;
  *
  * @author Codisimus
  */
-public abstract class Loot implements Comparable, ConfigurationSerializable {
+public abstract class Loot implements Comparable, ConfigurationSerializable, Cloneable {
     static Loot last; //The last successfully loaded Loot (used for debugging)
     double probability = 100;
 
@@ -65,6 +65,16 @@ public abstract class Loot implements Comparable, ConfigurationSerializable {
         return false;
     }
 
+    /**
+     * Returns true if generating the Loot calls into another plugin or reads files.
+     * Simulations count external Loot rather than generate it since that must stay on the main thread
+     *
+     * @return true if the Loot is external
+     */
+    public boolean isExternal() {
+        return false;
+    }
+
     /**
      * Returns the chance of looting
      *
@@ -93,6 +103,20 @@ public abstract class Loot implements Comparable, ConfigurationSerializable {
         return roll() < (probability + lootingBonus);
     }
 
+    /**
+     * Returns a copy of the Loot which is not affected by later edits to this one.
+     * The fields of most Loot are immutable so a shallow copy is enough
+     *
+     * @return A snapshot of the Loot
+     */
+    public Loot snapshot() {
+        try {
+            return (Loot) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
     /**
      * Returns a double between 0 (inclusive) and 100 (exclusive)
      *
@@ -50,6 +50,16 @@ public class LootBundle {
         itemList.add(item);
     }
 
+    /**
+     * Generates the given external Loot and adds it to the bundle
+     *
+     * @param loot The Loot which calls into another plugin or reads files
+     * @param lootingBonus The increased chance of getting rarer loots
+     */
+    public void addExternalLoot(Loot loot, double lootingBonus) {
+        loot.getLoot(this, lootingBonus);
+    }
+
     /**
      * Returns the list of commands to be executed
      *
@@ -4,6 +4,7 @@ import com.codisimus.plugins.phatloots.PhatLoot;
 import com.codisimus.plugins.phatloots.PhatLoots;
 import com.codisimus.plugins.phatloots.PhatLootsConfig;
 import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
+import com.codisimus.plugins.phatloots.util.WeightedSampler;
 import com.codisimus.plugins.phatloots.gui.Button;
 import com.codisimus.plugins.phatloots.gui.InventoryListener;
 import java.util.*;
@@ -27,6 +28,18 @@ public class LootCollection extends Loot {
     public int lowerNumberOfLoots;
     public int upperNumberOfLoots;
     private LinkedList<Loot> lootList;
+    private volatile Compiled compiled; //The Loots sorted by probability along with their WeightedSampler
+
+    /**
+     * The Loots of a collection sorted from lowest probability to highest along with a WeightedSampler of them.
+     * The list as it was when compiled is kept so that an edit to the collection or any of its Loots can be noticed
+     *
+     * @param listed The Loots in the order of the list
+     * @param probabilities The probability of each listed Loot
+     * @param loots The Loots sorted from lowest probability to highest
+     * @param sampler The WeightedSampler of the sorted probabilities
+     */
+    record Compiled(Loot[] listed, double[] probabilities, Loot[] loots, WeightedSampler sampler) {}
 
     /**
      * Adds A LootCollection as Loot
@@ -134,40 +147,65 @@ public class LootCollection extends Loot {
                                 : PhatLootsUtil.rollForInt(lowerNumberOfLoots, upperNumberOfLoots);
             //Make sure there are items that will be looted before entering the loop
             if (!lootList.isEmpty()) {
-                //Sort the loot from lowest probability to highest
-                Collections.sort(lootList);
+                Compiled c = compile();
+                //Without duplicates each Loot is removed from the Draw once it is picked
+                WeightedSampler.Draw draw = allowDuplicates ? null : c.sampler().draw();
                 int numberLooted = 0;
-                LinkedList<Loot> removed = new LinkedList<>();
                 while (numberLooted < numberOfLoots) {
-                    //Calculate the total probability to determine the maximum amount that can be rolled
-                    double total = 0;
-                    for (Loot loot : lootList) {
-                        total += loot.probability;
-                    }
-                    //Roll a number between 0 and total and then subtract the looting bonus
+                    //Roll a number between 0 and the total probability and then subtract the looting bonus
                     //We subtract because a lower roll is better in this case
-                    double roll = PhatLootsUtil.rollForDouble(total) - lootingBonus;
-                    for (Loot loot : lootList) {
-                        //Subtract the probability of each Loot from the roll until we drop below 0
-                        roll -= loot.getProbability();
-                        if (roll <= 0) {
-                            //Give this loot
-                            loot.getLoot(lootBundle, lootingBonus);
-                            if (!allowDuplicates) {
-                                removed.add(loot);
-                                lootList.remove(loot);
-                            }
-                            break;
-                        }
+                    double random = PhatLootsUtil.rollForDouble(1);
+                    int i = draw == null
+                            ? c.sampler().pick(random, lootingBonus)
+                            : draw.pick(random, lootingBonus);
+                    if (i >= 0) {
+                        //Give this loot
+                        c.loots()[i].getLoot(lootBundle, lootingBonus);
                     }
                     numberLooted++;
                 }
-                //Readd all removed Loot
-                lootList.addAll(removed);
             }
         }
     }
 
+    /**
+     * Returns the Loots of this collection sorted from lowest probability to highest along with their WeightedSampler.
+     * They are only compiled again if a Loot has been added, removed, or had its probability changed since
+     *
+     * @return The compiled Loots
+     */
+    Compiled compile() {
+        Compiled c = compiled;
+        if (c != null && c.listed().length == lootList.size()) {
+            int i = 0;
+            for (Loot loot : lootList) {
+                if (loot != c.listed()[i] || loot.probability != c.probabilities()[i]) {
+                    break;
+                }
+                i++;
+            }
+            if (i == c.listed().length) {
+                return c;
+            }
+        }
+
+        Loot[] listed = lootList.toArray(new Loot[0]);
+        double[] probabilities = new double[listed.length];
+        for (int i = 0; i < listed.length; i++) {
+            probabilities[i] = listed[i].probability;
+        }
+        //Sort the loot from lowest probability to highest without reordering the list itself
+        Loot[] loots = listed.clone();
+        Arrays.sort(loots);
+        double[] weights = new double[loots.length];
+        for (int i = 0; i < loots.length; i++) {
+            weights[i] = loots[i].probability;
+        }
+        c = new Compiled(listed, probabilities, loots, new WeightedSampler(weights));
+        compiled = c;
+        return c;
+    }
+
     /**
      * Returns the list of loot in the collection
      *
@@ -0,0 +1,151 @@
+package com.codisimus.plugins.phatloots.loot;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A LootHistogram is a LootBundle which totals the loot of many rolls rather than keeping each of them.
+ * Items are totaled by their prototype (the item with an amount of 1) and commands by the number of times they were looted.
+ * Messages are not kept
+ *
+ * @author Codisimus
+ */
+public class LootHistogram extends LootBundle {
+    private final HashMap<ItemStack, long[]> itemTotals = new HashMap<>(); //Prototype -> Total amount
+    private final IdentityHashMap<CommandLoot, long[]> commandTotals = new IdentityHashMap<>(); //CommandLoot -> Times looted
+    private long totalExp; //Kept as a long since the total of many rolls may not fit in an int
+
+    /**
+     * Creates a new, empty LootHistogram
+     */
+    public LootHistogram() {
+        super(Collections.emptyList());
+    }
+
+    /**
+     * Adds the amount of the given item to the total of its prototype
+     *
+     * @param item The given ItemStack to add as loot
+     */
+    @Override
+    public void addItem(ItemStack item) {
+        int amount = item.getAmount();
+        ItemStack prototype = item;
+        if (amount != 1) {
+            prototype = item.clone();
+            prototype.setAmount(1);
+        }
+
+        long[] total = itemTotals.get(prototype);
+        if (total == null) {
+            //Never keep the looted item itself since it may be shared
+            total = new long[1];
+            itemTotals.put(prototype == item ? item.clone() : prototype, total);
+        }
+        total[0] += amount;
+    }
+
+    /**
+     * Counts the given command
+     *
+     * @param command The given CommandLoot to add as loot
+     */
+    @Override
+    public void addCommand(CommandLoot command) {
+        commandTotals.computeIfAbsent(command, key -> new long[1])[0]++;
+    }
+
+    /**
+     * Ignores the given message
+     *
+     * @param msg The given message to add as loot
+     */
+    @Override
+    public void addMessage(String msg) {
+    }
+
+    /**
+     * Adds to the total amount of experience
+     *
+     * @param exp The additional amount of experience to be looted
+     */
+    @Override
+    public void addExp(int exp) {
+        totalExp += exp;
+    }
+
+    /**
+     * Sets the total amount of experience
+     *
+     * @param exp The new amount of experience to be looted
+     */
+    @Override
+    public void setExp(int exp) {
+        totalExp = exp;
+    }
+
+    /**
+     * Returns the total amount of experience limited to the range of an int
+     *
+     * @return The amount of experience that was looted
+     */
+    @Override
+    public int getExp() {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, totalExp));
+    }
+
+    /**
+     * Returns the total amount of experience
+     *
+     * @return The amount of experience that was looted
+     */
+    public long getTotalExp() {
+        return totalExp;
+    }
+
+    /**
+     * Returns the total amount of each item that was looted
+     *
+     * @return A Map of each prototype (with an amount of 1) to its total amount
+     */
+    public Map<ItemStack, Long> getItemTotals() {
+        Map<ItemStack, Long> totals = new LinkedHashMap<>();
+        for (Map.Entry<ItemStack, long[]> entry : itemTotals.entrySet()) {
+            totals.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return totals;
+    }
+
+    /**
+     * Returns the number of times that each command was looted
+     *
+     * @return A Map of each CommandLoot to the number of times it was looted
+     */
+    public Map<CommandLoot, Long> getCommandTotals() {
+        Map<CommandLoot, Long> totals = new LinkedHashMap<>();
+        for (Map.Entry<CommandLoot, long[]> entry : commandTotals.entrySet()) {
+            totals.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return totals;
+    }
+
+    /**
+     * Adds the totals of the given LootHistogram to this one
+     *
+     * @param other The LootHistogram to merge into this one
+     */
+    public void merge(LootHistogram other) {
+        for (Map.Entry<ItemStack, long[]> entry : other.itemTotals.entrySet()) {
+            itemTotals.computeIfAbsent(entry.getKey(), key -> new long[1])[0] += entry.getValue()[0];
+        }
+        for (Map.Entry<CommandLoot, long[]> entry : other.commandTotals.entrySet()) {
+            commandTotals.computeIfAbsent(entry.getKey(), key -> new long[1])[0] += entry.getValue()[0];
+        }
+        addMoney(other.getMoney());
+        totalExp += other.totalExp;
+    }
+}
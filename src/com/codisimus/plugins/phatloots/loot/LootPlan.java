@@ -0,0 +1,285 @@
+package com.codisimus.plugins.phatloots.loot;
+
+import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
+import com.codisimus.plugins.phatloots.util.WeightedSampler;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LootPlan is an immutable copy of a list of Loot which is ready to be rolled for.
+ * Collections which roll for each Loot are flattened into the plan, collections which roll collectively are
+ * compiled into WeightedSamplers and empty collections are pruned.
+ * Each Loot is copied when the plan is compiled so nothing in a LootPlan changes afterwards (even while the Loot is edited)
+ * and any number of threads may roll for it at once
+ *
+ * @author Codisimus
+ */
+public final class LootPlan {
+    public static final LootPlan EMPTY = new LootPlan(new Step[0]);
+    private final Step[] steps;
+    private final boolean gated; //True if any Step is the gate of a flattened collection
+
+    /**
+     * A Node adds Loot to a LootBundle once its Step has been rolled for successfully
+     */
+    private interface Node {
+        void getLoot(LootBundle lootBundle, double lootingBonus);
+    }
+
+    /**
+     * A single roll within the plan
+     *
+     * @param node The Node to loot or null if this Step is the gate of a flattened collection
+     * @param probability The chance of passing each roll
+     * @param rolls The number of rolls which must all pass
+     * @param skip The number of following Steps which belong to the flattened collection of this gate
+     */
+    private record Step(Node node, double probability, int rolls, int skip) {
+        /**
+         * Rolls for this Step.
+         * A roll is only drawn if the result is not already certain
+         *
+         * @param lootingBonus The increased chance of getting rarer loots
+         * @return true if every roll passed
+         */
+        private boolean passes(double lootingBonus) {
+            double chance = probability + lootingBonus;
+            if (chance >= 100) {
+                return true;
+            }
+            if (chance <= 0) {
+                return false;
+            }
+            for (int i = 0; i < rolls; i++) {
+                if (Loot.roll() >= chance) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A Loot which is not a collection
+     *
+     * @param loot The snapshot of the Loot to add
+     * @param external True if the Loot calls into another plugin or reads files and is handed to the LootBundle instead
+     */
+    private record Leaf(Loot loot, boolean external) implements Node {
+        @Override
+        public void getLoot(LootBundle lootBundle, double lootingBonus) {
+            if (external) {
+                lootBundle.addExternalLoot(loot, lootingBonus);
+            } else {
+                loot.getLoot(lootBundle, lootingBonus);
+            }
+        }
+    }
+
+    /**
+     * A collection which rolls for each Loot but was picked from a collection which rolls collectively
+     *
+     * @param plan The flattened Loots of the collection
+     */
+    private record Each(LootPlan plan) implements Node {
+        @Override
+        public void getLoot(LootBundle lootBundle, double lootingBonus) {
+            plan.rollForLoot(lootBundle, lootingBonus);
+        }
+    }
+
+    /**
+     * A collection which rolls for its Loots collectively
+     *
+     * @param lowerNumberOfLoots The lower bound of the number of loots
+     * @param upperNumberOfLoots The upper bound of the number of loots
+     * @param allowDuplicates True if a Loot may be picked more than once
+     * @param nodes The Node of each Loot sorted from lowest probability to highest
+     * @param sampler The WeightedSampler of the sorted probabilities
+     */
+    private record Pick(int lowerNumberOfLoots, int upperNumberOfLoots, boolean allowDuplicates,
+            Node[] nodes, WeightedSampler sampler) implements Node {
+        @Override
+        public void getLoot(LootBundle lootBundle, double lootingBonus) {
+            int numberOfLoots = lowerNumberOfLoots == upperNumberOfLoots
+                                ? lowerNumberOfLoots
+                                : PhatLootsUtil.rollForInt(lowerNumberOfLoots, upperNumberOfLoots);
+            WeightedSampler.Draw draw = allowDuplicates ? null : sampler.draw();
+            for (int numberLooted = 0; numberLooted < numberOfLoots; numberLooted++) {
+                double random = PhatLootsUtil.rollForDouble(1);
+                int i = draw == null
+                        ? sampler.pick(random, lootingBonus)
+                        : draw.pick(random, lootingBonus);
+                if (i >= 0 && nodes[i] != null) {
+                    nodes[i].getLoot(lootBundle, lootingBonus);
+                }
+            }
+        }
+    }
+
+    private LootPlan(Step[] steps) {
+        this.steps = steps;
+        boolean gated = false;
+        for (Step step : steps) {
+            gated |= step.skip() > 0;
+        }
+        this.gated = gated;
+    }
+
+    /**
+     * Compiles the given list of Loot into a LootPlan.
+     * This reads the list and every collection within it so it should be called on the main thread
+     *
+     * @param lootList The Loots which are each rolled for
+     * @return The compiled LootPlan
+     */
+    public static LootPlan compile(List<Loot> lootList) {
+        return compile(lootList, 1);
+    }
+
+    private static LootPlan compile(List<Loot> lootList, int rolls) {
+        List<Step> steps = new ArrayList<>();
+        addSteps(steps, lootList, rolls);
+        return steps.isEmpty() ? EMPTY : new LootPlan(steps.toArray(new Step[0]));
+    }
+
+    /**
+     * Adds a Step for each of the given Loots
+     *
+     * @param steps The Steps of the plan so far
+     * @param loots The Loots to add
+     * @param rolls The number of rolls for each Loot (the Loots of a collection are rolled for twice)
+     */
+    private static void addSteps(List<Step> steps, List<Loot> loots, int rolls) {
+        for (Loot loot : loots) {
+            if (loot instanceof LootCollection coll && coll.isRollForEach()) {
+                //Flatten the collection behind a gate which skips its Loots if the collection is not rolled
+                int gate = steps.size();
+                steps.add(null);
+                addSteps(steps, coll.getLootList(), 2);
+                int skip = steps.size() - gate - 1;
+                if (skip == 0) {
+                    steps.remove(gate);
+                } else {
+                    steps.set(gate, new Step(null, coll.probability, rolls, skip));
+                }
+            } else {
+                Node node = toNode(loot);
+                if (node != null) {
+                    steps.add(new Step(node, loot.probability, rolls, 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the Node which gives the given Loot
+     *
+     * @param loot The Loot to compile
+     * @return The Node or null if the Loot never gives anything
+     */
+    private static Node toNode(Loot loot) {
+        if (!(loot instanceof LootCollection coll)) {
+            Loot snapshot = loot.snapshot();
+            return new Leaf(snapshot, snapshot.isExternal());
+        }
+
+        if (coll.isRollForEach()) {
+            LootPlan plan = compile(coll.getLootList(), 2);
+            return plan == EMPTY ? null : new Each(plan);
+        }
+
+        if (coll.getLootList().isEmpty()) {
+            return null;
+        }
+        LootCollection.Compiled c = coll.compile();
+        //Empty Loots are kept as null since their probability still counts toward the roll
+        Node[] nodes = new Node[c.loots().length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = toNode(c.loots()[i]);
+        }
+        return new Pick(coll.lowerNumberOfLoots, coll.upperNumberOfLoots, LootCollection.allowDuplicates,
+                        nodes, c.sampler());
+    }
+
+    /**
+     * Rolls for each Loot of the plan and adds it to the given LootBundle
+     *
+     * @param lootBundle The given LootBundle
+     * @param lootingBonus The increased chance of getting rarer loots
+     * @return The given LootBundle
+     */
+    public LootBundle rollForLoot(LootBundle lootBundle, double lootingBonus) {
+        for (int i = 0; i < steps.length; i++) {
+            Step step = steps[i];
+            if (!step.passes(lootingBonus)) {
+                //Skip the Loots of a collection which was not rolled
+                i += step.skip();
+            } else if (step.node() != null) {
+                step.node().getLoot(lootBundle, lootingBonus);
+            }
+        }
+        return lootBundle;
+    }
+
+    /**
+     * Rolls for the plan the given number of times and adds all of the loot to the given LootBundle.
+     * Use a LootHistogram to total the loot without keeping each item
+     *
+     * @param lootBundle The given LootBundle
+     * @param lootingBonus The increased chance of getting rarer loots
+     * @param times The number of times to roll
+     * @return The given LootBundle
+     */
+    public LootBundle rollForLoot(LootBundle lootBundle, double lootingBonus, int times) {
+        rollForLoot(null, lootBundle, lootingBonus, times);
+        return lootBundle;
+    }
+
+    /**
+     * Rolls for the plan once for each of the given LootBundles
+     *
+     * @param lootBundles The LootBundles which each receive the loot of one roll
+     * @param lootingBonus The increased chance of getting rarer loots
+     */
+    public void rollForLoot(LootBundle[] lootBundles, double lootingBonus) {
+        rollForLoot(lootBundles, null, lootingBonus, lootBundles.length);
+    }
+
+    /**
+     * Rolls for the plan the given number of times in a single pass over the Steps
+     *
+     * @param lootBundles The LootBundle of each roll or null if every roll adds to the given lootBundle
+     * @param lootBundle The LootBundle which every roll adds to if lootBundles is null
+     * @param lootingBonus The increased chance of getting rarer loots
+     * @param times The number of times to roll
+     */
+    private void rollForLoot(LootBundle[] lootBundles, LootBundle lootBundle, double lootingBonus, int times) {
+        //The index of the first Step which each roll may use again after a gate failed
+        int[] skipUntil = gated ? new int[times] : null;
+        for (int i = 0; i < steps.length; i++) {
+            Step step = steps[i];
+            for (int roll = 0; roll < times; roll++) {
+                if (skipUntil != null && skipUntil[roll] > i) {
+                    continue;
+                }
+                if (!step.passes(lootingBonus)) {
+                    if (skipUntil != null) {
+                        skipUntil[roll] = i + step.skip() + 1;
+                    }
+                } else if (step.node() != null) {
+                    step.node().getLoot(lootBundles == null ? lootBundle : lootBundles[roll], lootingBonus);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of Steps in the plan
+     *
+     * @return The number of rolls which may be drawn for a single loot (ignoring collections which roll collectively)
+     */
+    public int size() {
+        return steps.length;
+    }
+}
@@ -187,6 +187,16 @@ public class MythicDropsItem extends Loot {
         }
     }
 
+    /**
+     * MythicDrops items are always external
+     *
+     * @return true
+     */
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
     /**
      * Returns the information of the MythicDrops Item in the form of an ItemStack
      *
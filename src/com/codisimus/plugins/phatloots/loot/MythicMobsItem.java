@@ -92,6 +92,16 @@ public class MythicMobsItem extends Loot {
         lootBundle.addItem(item);
     }
 
+    /**
+     * MythicMobs items are always external
+     *
+     * @return true
+     */
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
     /**
      * Returns the information of the MythicDrops Item in the form of an ItemStack
      *
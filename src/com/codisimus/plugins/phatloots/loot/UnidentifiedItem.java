@@ -131,6 +131,16 @@ public class UnidentifiedItem extends Loot {
         }
     }
 
+    /**
+     * Unidentified items are always external since they are built by MythicDrops
+     *
+     * @return true
+     */
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
     /**
      * Returns the information of the Unidentified Item in the form of an ItemStack
      *
@@ -0,0 +1,368 @@
+package com.codisimus.plugins.phatloots.storage;
+
+import com.codisimus.plugins.phatloots.PhatLoots;
+import com.codisimus.plugins.phatloots.util.PhatLootsUtil;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The default LootStorage which saves each PhatLoot in its own files.
+ * Loot tables are saved in LootTables/<name>.yml, chests in Chests/<name>.txt
+ * and loot times in LootTimes/<name>.properties
+ *
+ * @author Codisimus
+ */
+public class FlatFileStorage implements LootStorage {
+    public static final String NAME = "FlatFile";
+    private Map<String, Set<UUID>> playerIndex; //PhatLoot Name -> Users with loot times of it, null until it is first needed
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void close() {
+        //Nothing is held open
+    }
+
+    @Override
+    public Collection<String> getLootTableNames() {
+        List<String> names = new ArrayList<>();
+        File[] files = getDirectory("LootTables").listFiles(PhatLootsUtil.YAML_FILTER);
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                names.add(name.substring(0, name.length() - PhatLootsUtil.YAML_EXTENSION.length()));
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public String loadLootTable(String name) throws IOException {
+        File file = getLootTableFile(name);
+        if (!file.exists()) {
+            return null;
+        }
+
+        //Older files may have been saved in the default encoding rather than UTF-8
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return isValidUTF8(bytes)
+               ? new String(bytes, StandardCharsets.UTF_8)
+               : new String(bytes, Charset.defaultCharset());
+    }
+
+    @Override
+    public void saveLootTable(String name, String data) throws IOException {
+        try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(getLootTableFile(name)), StandardCharsets.UTF_8)) {
+            out.write(data, 0, data.length());
+            out.flush();
+        }
+    }
+
+    @Override
+    public List<String> loadChests(String name) throws IOException {
+        File file = getChestFile(name);
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+
+        List<String> chests = new ArrayList<>();
+        try (Scanner scanner = new Scanner(file)) {
+            //Each line of the file is a new PhatLootChest
+            while (scanner.hasNextLine()) {
+                chests.add(scanner.nextLine());
+            }
+        }
+        return chests;
+    }
+
+    @Override
+    public void saveChests(String name, Collection<String> chests) throws IOException {
+        File file = getChestFile(name);
+
+        //Don't save an empty file
+        if (chests.isEmpty()) {
+            //Delete the pre-existing file
+            if (file.exists()) {
+                file.delete();
+            }
+            return;
+        }
+
+        try (FileWriter fWriter = new FileWriter(file)) {
+            try (PrintWriter pWriter = new PrintWriter(fWriter)) {
+                for (String chest : chests) {
+                    pWriter.println(chest);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void loadLootTimes(String name, LootTimeConsumer consumer) throws IOException {
+        File file = getLootTimesFile(name);
+        if (!file.exists()) {
+            return;
+        }
+
+        Properties properties = readProperties(file);
+        for (String key : properties.stringPropertyNames()) {
+            long time = parseTime(properties.getProperty(key));
+
+            //The key is in the form world'x'y'z'user or user
+            int index = key.lastIndexOf('\'');
+            String user = key.substring(index + 1);
+            try {
+                UUID uuid = user.equals("global") ? new UUID(0, 0) : UUID.fromString(user);
+                consumer.accept(index < 0 ? null : key.substring(0, index),
+                                uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), time);
+            } catch (IllegalArgumentException notUUID) {
+                PhatLoots.logger.warning("Dropped loot time of unknown user " + key + " from PhatLoot " + name);
+            }
+        }
+    }
+
+    @Override
+    public void saveLootTimes(String name, LootTimeSource source) throws IOException {
+        //Convert the loot times to their String form
+        Properties properties = new Properties();
+        source.forEach((chest, most, least, time) -> {
+            String user = most == 0 && least == 0
+                          ? "global"
+                          : new UUID(most, least).toString();
+            properties.setProperty(chest == null ? user : chest + "'" + user, String.valueOf(time));
+        });
+
+        writeProperties(getLootTimesFile(name), properties);
+    }
+
+    @Override
+    public Collection<UUID> getPlayerLootTimeUsers() {
+        List<UUID> users = new ArrayList<>();
+        File[] files = getPlayerDirectory().listFiles(PhatLootsUtil.PROPERTIES_FILTER);
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    users.add(UUID.fromString(name.substring(0, name.length() - PhatLootsUtil.PROPERTIES_EXTENSION.length())));
+                } catch (IllegalArgumentException notUUID) {
+                    PhatLoots.logger.warning("Ignored player loot times file " + name);
+                }
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public void loadPlayerLootTimes(UUID user, PlayerLootTimeConsumer consumer) throws IOException {
+        File file = getPlayerLootTimesFile(user);
+        if (!file.exists()) {
+            return;
+        }
+
+        Properties properties = readProperties(file);
+        for (String key : properties.stringPropertyNames()) {
+            String[] split = splitPlayerKey(key);
+            consumer.accept(split[0], split[1], parseTime(properties.getProperty(key)));
+        }
+    }
+
+    @Override
+    public synchronized void savePlayerLootTimes(UUID user, PlayerLootTimeSource source) throws IOException {
+        Properties properties = new Properties();
+        Set<String> names = new HashSet<>();
+        source.forEach((phatLoot, chest, time) -> {
+            properties.setProperty(chest == null ? phatLoot : phatLoot + "'" + chest, String.valueOf(time));
+            names.add(phatLoot);
+        });
+        writeProperties(getPlayerLootTimesFile(user), properties);
+
+        if (playerIndex != null) {
+            playerIndex.values().removeIf(users -> users.remove(user) && users.isEmpty());
+            for (String name : names) {
+                playerIndex.computeIfAbsent(name, key -> new HashSet<>()).add(user);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void removePlayerLootTimes(String name, LootTimeFilter filter) throws IOException {
+        //Each player has their own file so only the files of the users who have looted the PhatLoot are checked
+        Set<UUID> users = getPlayerIndex().get(name);
+        if (users == null) {
+            return;
+        }
+
+        Iterator<UUID> itr = users.iterator();
+        while (itr.hasNext()) {
+            UUID user = itr.next();
+            File file = getPlayerLootTimesFile(user);
+            if (!file.exists()) {
+                itr.remove();
+                continue;
+            }
+
+            Properties properties = readProperties(file);
+            boolean removed = properties.keySet().removeIf(key -> {
+                String[] split = splitPlayerKey((String) key);
+                return split[0].equals(name)
+                       && filter.matches(split[1], user.getMostSignificantBits(), user.getLeastSignificantBits());
+            });
+            if (removed) {
+                writeProperties(file, properties);
+                if (properties.keySet().stream().noneMatch(key -> splitPlayerKey((String) key)[0].equals(name))) {
+                    itr.remove();
+                }
+            }
+        }
+        if (users.isEmpty()) {
+            playerIndex.remove(name);
+        }
+    }
+
+    /**
+     * Returns the users who have loot times of each PhatLoot.
+     * Every player loot times file is read the first time that this is called and the index is then kept up to date as files are saved
+     *
+     * @return The index of PhatLoot Name -> Users
+     * @throws IOException if a player loot times file could not be read
+     */
+    private Map<String, Set<UUID>> getPlayerIndex() throws IOException {
+        if (playerIndex == null) {
+            Map<String, Set<UUID>> index = new HashMap<>();
+            for (UUID user : getPlayerLootTimeUsers()) {
+                for (String key : readProperties(getPlayerLootTimesFile(user)).stringPropertyNames()) {
+                    index.computeIfAbsent(splitPlayerKey(key)[0], name -> new HashSet<>()).add(user);
+                }
+            }
+            playerIndex = index;
+        }
+        return playerIndex;
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        getLootTableFile(name).delete();
+        getChestFile(name).delete();
+        getLootTimesFile(name).delete();
+        removePlayerLootTimes(name, LootTimeFilter.ALL);
+    }
+
+    /**
+     * Returns the .properties file of the loot times of the given PhatLoot
+     *
+     * @param name The name of the PhatLoot
+     * @return The file which may not exist
+     */
+    public File getLootTimesFile(String name) {
+        return new File(getDirectory("LootTimes"), name + PhatLootsUtil.PROPERTIES_EXTENSION);
+    }
+
+    private File getPlayerLootTimesFile(UUID user) {
+        return new File(getPlayerDirectory(), user + PhatLootsUtil.PROPERTIES_EXTENSION);
+    }
+
+    private static File getPlayerDirectory() {
+        return new File(getDirectory("LootTimes"), "Players");
+    }
+
+    private File getLootTableFile(String name) {
+        return new File(getDirectory("LootTables"), name + PhatLootsUtil.YAML_EXTENSION);
+    }
+
+    private File getChestFile(String name) {
+        return new File(getDirectory("Chests"), name + PhatLootsUtil.TEXT_EXTENSION);
+    }
+
+    private static File getDirectory(String name) {
+        return new File(PhatLoots.dataFolder, name);
+    }
+
+    /**
+     * Splits a key of a player loot times file into the name of the PhatLoot and the chest
+     *
+     * @param key The key in the form PhatLoot'world'x'y'z or PhatLoot
+     * @return The name of the PhatLoot and the chest, which is null if the time is not for a chest
+     */
+    private static String[] splitPlayerKey(String key) {
+        //The chest is always the last four parts of the key
+        int index = key.length();
+        for (int i = 0; i < 4 && index > 0; i++) {
+            index = key.lastIndexOf('\'', index - 1);
+        }
+        return index > 0
+               ? new String[] { key.substring(0, index), key.substring(index + 1) }
+               : new String[] { key, null };
+    }
+
+    private static long parseTime(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException notLong) {
+            PhatLoots.logger.severe("Fixed corrupted time value!");
+            return 0;
+        }
+    }
+
+    private static Properties readProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        try (FileInputStream fis = new FileInputStream(file)) {
+            properties.load(fis);
+        }
+        return properties;
+    }
+
+    /**
+     * Writes the given Properties to file.
+     * The file is deleted if there is nothing to save
+     *
+     * @param file The file to write
+     * @param properties The Properties to save
+     * @throws IOException if the file could not be written
+     */
+    private static void writeProperties(File file, Properties properties) throws IOException {
+        //Delete the file if there are no times left to save
+        if (properties.isEmpty()) {
+            if (file.exists()) {
+                file.delete();
+            }
+            return;
+        }
+
+        //Write to a temporary file first so that the old file is not lost if writing fails
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            properties.store(fos, null);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Checks if the given byte array is UTF-8 encoded.
+     *
+     * @param bytes The array of bytes to check for validity
+     * @return true when validly UTF8 encoded
+     */
+    private static boolean isValidUTF8(byte[] bytes) {
+        try {
+            StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+}
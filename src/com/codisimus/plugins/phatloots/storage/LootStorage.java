@@ -0,0 +1,276 @@
+package com.codisimus.plugins.phatloots.storage;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A LootStorage saves and loads the loot tables, linked chests and loot times of PhatLoots.
+ * Chests are given as Strings in the form world'x'y'z.
+ * Loot tables are given as YAML Strings as they are saved by Bukkit's YamlConfiguration.
+ * Loot times of players may also be saved apart from their PhatLoots so that they can be loaded when the player joins.
+ * Methods are called from both the main thread and the save thread of PhatLoots
+ *
+ * @author Codisimus
+ */
+public interface LootStorage {
+
+    /**
+     * Returns the name of the storage type as it is written in the config
+     *
+     * @return The name of the storage type
+     */
+    String getName();
+
+    /**
+     * Releases any resources which are held by the storage
+     */
+    void close();
+
+    /**
+     * Returns the names of all saved loot tables
+     *
+     * @return The names of the PhatLoots
+     * @throws IOException if the names could not be read
+     */
+    Collection<String> getLootTableNames() throws IOException;
+
+    /**
+     * Returns the YAML String of the given loot table
+     *
+     * @param name The name of the PhatLoot
+     * @return The YAML String or null if the loot table does not exist
+     * @throws IOException if the loot table could not be read
+     */
+    String loadLootTable(String name) throws IOException;
+
+    /**
+     * Saves the YAML String of the given loot table
+     *
+     * @param name The name of the PhatLoot
+     * @param data The YAML String
+     * @throws IOException if the loot table could not be written
+     */
+    void saveLootTable(String name, String data) throws IOException;
+
+    /**
+     * Returns the chests which are linked to the given PhatLoot
+     *
+     * @param name The name of the PhatLoot
+     * @return The list of chests in the form world'x'y'z
+     * @throws IOException if the chests could not be read
+     */
+    List<String> loadChests(String name) throws IOException;
+
+    /**
+     * Saves the chests which are linked to the given PhatLoot, replacing any previously saved chests
+     *
+     * @param name The name of the PhatLoot
+     * @param chests The chests in the form world'x'y'z
+     * @throws IOException if the chests could not be written
+     */
+    void saveChests(String name, Collection<String> chests) throws IOException;
+
+    /**
+     * Passes each loot time of the given PhatLoot to the consumer
+     *
+     * @param name The name of the PhatLoot
+     * @param consumer The consumer of the loot times
+     * @throws IOException if the loot times could not be read
+     */
+    void loadLootTimes(String name, LootTimeConsumer consumer) throws IOException;
+
+    /**
+     * Passes each loot time of the given PhatLoot which matches the filter to the consumer
+     *
+     * @param name The name of the PhatLoot
+     * @param filter The filter of the loot times
+     * @param consumer The consumer of the loot times
+     * @throws IOException if the loot times could not be read
+     */
+    default void loadLootTimes(String name, LootTimeFilter filter, LootTimeConsumer consumer) throws IOException {
+        loadLootTimes(name, (chest, most, least, time) -> {
+            if (filter.matches(chest, most, least)) {
+                consumer.accept(chest, most, least, time);
+            }
+        });
+    }
+
+    /**
+     * Saves the loot times of the given PhatLoot, replacing any previously saved loot times
+     *
+     * @param name The name of the PhatLoot
+     * @param source The source of the loot times
+     * @throws IOException if the loot times could not be written
+     */
+    void saveLootTimes(String name, LootTimeSource source) throws IOException;
+
+    /**
+     * Returns true if single loot times can be looked up and updated.
+     * PhatLoots then only keep the loot times which they have used in memory rather than loading all of them
+     *
+     * @return true if the storage supports loadLootTime and updateLootTimes
+     */
+    default boolean isIndexed() {
+        return false;
+    }
+
+    /**
+     * Returns the saved loot time of a user for a chest of the given PhatLoot
+     *
+     * @param name The name of the PhatLoot
+     * @param chest The chest in the form world'x'y'z or null if the time is not for a chest
+     * @param most The most significant bits of the user's UUID (0 for global)
+     * @param least The least significant bits of the user's UUID (0 for global)
+     * @return The time that the user looted or Long.MIN_VALUE if there is no saved time
+     * @throws IOException if the loot time could not be read
+     */
+    default long loadLootTime(String name, String chest, long most, long least) throws IOException {
+        throw new UnsupportedOperationException(getName() + " storage is not indexed");
+    }
+
+    /**
+     * Applies the changes to the loot times of the given PhatLoot all at once.
+     * The removed loot times are deleted first, then the expired loot times and then the changed loot times are written
+     *
+     * @param name The name of the PhatLoot
+     * @param removed The filters of the loot times which were removed in the order that they were removed
+     * @param expiredBefore Loot times before this time are deleted, Long.MIN_VALUE if loot times never expire
+     * @param changed The source of the loot times which were added or changed
+     * @throws IOException if the loot times could not be written
+     */
+    default void updateLootTimes(String name, List<LootTimeFilter> removed, long expiredBefore, LootTimeSource changed)
+            throws IOException {
+        throw new UnsupportedOperationException(getName() + " storage is not indexed");
+    }
+
+    /**
+     * Returns the users who have loot times saved apart from their PhatLoots
+     *
+     * @return The UUIDs of the users
+     * @throws IOException if the users could not be read
+     */
+    Collection<UUID> getPlayerLootTimeUsers() throws IOException;
+
+    /**
+     * Passes each loot time of the given user to the consumer
+     *
+     * @param user The UUID of the user
+     * @param consumer The consumer of the loot times
+     * @throws IOException if the loot times could not be read
+     */
+    void loadPlayerLootTimes(UUID user, PlayerLootTimeConsumer consumer) throws IOException;
+
+    /**
+     * Saves the loot times of the given user, replacing any previously saved loot times of the user
+     *
+     * @param user The UUID of the user
+     * @param source The source of the loot times
+     * @throws IOException if the loot times could not be written
+     */
+    void savePlayerLootTimes(UUID user, PlayerLootTimeSource source) throws IOException;
+
+    /**
+     * Removes the loot times of users which are selected by the given filter from a PhatLoot
+     *
+     * @param name The name of the PhatLoot
+     * @param filter The filter of the loot times to remove
+     * @throws IOException if the loot times could not be written
+     */
+    void removePlayerLootTimes(String name, LootTimeFilter filter) throws IOException;
+
+    /**
+     * Deletes all data of the given PhatLoot
+     *
+     * @param name The name of the PhatLoot
+     * @throws IOException if the data could not be deleted
+     */
+    void delete(String name) throws IOException;
+
+    /**
+     * Selects loot times of a PhatLoot by their World, chest and user
+     *
+     * @param world The name of the World of the chests or null for every World
+     * @param chest The chest in the form world'x'y'z or null for every chest
+     * @param user The UUID of the user or null for every user
+     * @param playersOnly True if global loot times are not selected
+     */
+    record LootTimeFilter(String world, String chest, UUID user, boolean playersOnly) {
+        /**
+         * Selects every loot time of a PhatLoot
+         */
+        public static final LootTimeFilter ALL = new LootTimeFilter(null, null, null, false);
+
+        /**
+         * Returns true if the given loot time is selected by this filter
+         *
+         * @param chest The chest in the form world'x'y'z or null if the time is not for a chest
+         * @param most The most significant bits of the user's UUID (0 for global)
+         * @param least The least significant bits of the user's UUID (0 for global)
+         * @return true if the loot time matches
+         */
+        public boolean matches(String chest, long most, long least) {
+            return (world == null || chest != null && chest.length() > world.length()
+                                     && chest.charAt(world.length()) == '\'' && chest.startsWith(world))
+                   && (this.chest == null || this.chest.equals(chest))
+                   && (user == null || user.getMostSignificantBits() == most && user.getLeastSignificantBits() == least)
+                   && (!playersOnly || most != 0 || least != 0);
+        }
+    }
+
+    /**
+     * A LootTimeConsumer receives loot times one at a time
+     */
+    interface LootTimeConsumer {
+        /**
+         * Accepts one loot time
+         *
+         * @param chest The chest in the form world'x'y'z or null if the time is not for a chest
+         * @param most The most significant bits of the user's UUID (0 for global)
+         * @param least The least significant bits of the user's UUID (0 for global)
+         * @param time The time that the user looted
+         */
+        void accept(String chest, long most, long least, long time);
+    }
+
+    /**
+     * A LootTimeSource gives loot times one at a time
+     */
+    interface LootTimeSource {
+        /**
+         * Passes each loot time to the given consumer
+         *
+         * @param consumer The consumer of the loot times
+         * @throws IOException if the loot times could not be read
+         */
+        void forEach(LootTimeConsumer consumer) throws IOException;
+    }
+
+    /**
+     * A PlayerLootTimeConsumer receives the loot times of a single user one at a time
+     */
+    interface PlayerLootTimeConsumer {
+        /**
+         * Accepts one loot time
+         *
+         * @param phatLoot The name of the PhatLoot
+         * @param chest The chest in the form world'x'y'z or null if the time is not for a chest
+         * @param time The time that the user looted
+         */
+        void accept(String phatLoot, String chest, long time);
+    }
+
+    /**
+     * A PlayerLootTimeSource gives the loot times of a single user one at a time
+     */
+    interface PlayerLootTimeSource {
+        /**
+         * Passes each loot time to the given consumer
+         *
+         * @param consumer The consumer of the loot times
+         * @throws IOException if the loot times could not be read
+         */
+        void forEach(PlayerLootTimeConsumer consumer) throws IOException;
+    }
+}
@@ -0,0 +1,522 @@
+package com.codisimus.plugins.phatloots.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A LootStorage which saves all PhatLoots in a single SQLite database file.
+ * Loot times are indexed by PhatLoot and by user so that they may be queried without reading every row.
+ * Loot times of players which are saved apart from their PhatLoots are kept in their own table.
+ * Writes share one connection while reads use a second connection so that lookups from the main thread
+ * never wait for the save thread to finish writing.
+ * Single loot times are looked up with a third connection so that they never wait for a streaming read either
+ *
+ * @author Codisimus
+ */
+public class SQLiteStorage implements LootStorage {
+    public static final String NAME = "SQLite";
+    private static final int BATCH_SIZE = 1000;
+    private static final String NO_CHEST = ""; //Chest of loot times which were not given by a chest
+
+    private final Connection connection; //Used for writing
+    private final Connection reader; //Used for reading, the database is in WAL mode so reads see the last commit
+    private final Connection lookupConnection; //Used only by lookup which is called from the main thread
+    private final PreparedStatement lookup; //Reads a single loot time
+
+    /**
+     * Opens the given SQLite database, creating its tables if they do not exist
+     *
+     * @param file The database file
+     * @throws IOException if the database could not be opened
+     */
+    public SQLiteStorage(File file) throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("PRAGMA journal_mode=WAL");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS loot_tables ("
+                        + "name TEXT PRIMARY KEY, data TEXT NOT NULL)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS chests ("
+                        + "phatloot TEXT NOT NULL, chest TEXT NOT NULL, "
+                        + "PRIMARY KEY (phatloot, chest))");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS loot_times ("
+                        + "phatloot TEXT NOT NULL, chest TEXT NOT NULL, "
+                        + "user_most INTEGER NOT NULL, user_least INTEGER NOT NULL, time INTEGER NOT NULL, "
+                        + "PRIMARY KEY (phatloot, chest, user_most, user_least))");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS loot_times_user "
+                        + "ON loot_times (phatloot, user_most, user_least)");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS loot_times_time "
+                        + "ON loot_times (phatloot, time)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS player_loot_times ("
+                        + "user_most INTEGER NOT NULL, user_least INTEGER NOT NULL, "
+                        + "phatloot TEXT NOT NULL, chest TEXT NOT NULL, time INTEGER NOT NULL, "
+                        + "PRIMARY KEY (user_most, user_least, phatloot, chest))");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS player_loot_times_chest "
+                        + "ON player_loot_times (phatloot, chest)");
+            }
+            reader = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            lookupConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            lookup = lookupConnection.prepareStatement("SELECT time FROM loot_times "
+                    + "WHERE phatloot = ? AND chest = ? AND user_most = ? AND user_least = ?");
+        } catch (ClassNotFoundException | SQLException ex) {
+            throw new IOException("Could not open " + file.getName(), ex);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+        synchronized (reader) {
+            try {
+                reader.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        synchronized (lookup) {
+            try {
+                lookupConnection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> getLootTableNames() throws IOException {
+        synchronized (reader) {
+            List<String> names = new ArrayList<>();
+            try (Statement statement = reader.createStatement();
+                 ResultSet results = statement.executeQuery("SELECT name FROM loot_tables")) {
+                while (results.next()) {
+                    names.add(results.getString(1));
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+            return names;
+        }
+    }
+
+    @Override
+    public String loadLootTable(String name) throws IOException {
+        synchronized (reader) {
+            try (PreparedStatement statement = reader.prepareStatement("SELECT data FROM loot_tables WHERE name = ?")) {
+                statement.setString(1, name);
+                try (ResultSet results = statement.executeQuery()) {
+                    return results.next() ? results.getString(1) : null;
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void saveLootTable(String name, String data) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO loot_tables (name, data) VALUES (?, ?)")) {
+            statement.setString(1, name);
+            statement.setString(2, data);
+            statement.executeUpdate();
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public List<String> loadChests(String name) throws IOException {
+        synchronized (reader) {
+            List<String> chests = new ArrayList<>();
+            try (PreparedStatement statement = reader.prepareStatement("SELECT chest FROM chests WHERE phatloot = ?")) {
+                statement.setString(1, name);
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        chests.add(results.getString(1));
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+            return chests;
+        }
+    }
+
+    @Override
+    public synchronized void saveChests(String name, Collection<String> chests) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM chests WHERE phatloot = ?");
+                 PreparedStatement insert = connection.prepareStatement("INSERT OR REPLACE INTO chests (phatloot, chest) VALUES (?, ?)")) {
+                delete.setString(1, name);
+                delete.executeUpdate();
+
+                int count = 0;
+                for (String chest : chests) {
+                    insert.setString(1, name);
+                    insert.setString(2, chest);
+                    insert.addBatch();
+                    if (++count % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException ex) {
+            rollback();
+            throw new IOException(ex);
+        } finally {
+            autoCommit();
+        }
+    }
+
+    @Override
+    public void loadLootTimes(String name, LootTimeConsumer consumer) throws IOException {
+        synchronized (reader) {
+            try (PreparedStatement statement = reader.prepareStatement(
+                    "SELECT chest, user_most, user_least, time FROM loot_times WHERE phatloot = ?")) {
+                statement.setString(1, name);
+                statement.setFetchSize(BATCH_SIZE);
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        String chest = results.getString(1);
+                        consumer.accept(chest.equals(NO_CHEST) ? null : chest,
+                                        results.getLong(2), results.getLong(3), results.getLong(4));
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void saveLootTimes(String name, LootTimeSource source) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM loot_times WHERE phatloot = ?");
+                 PreparedStatement insert = connection.prepareStatement(
+                         "INSERT OR REPLACE INTO loot_times (phatloot, chest, user_most, user_least, time) VALUES (?, ?, ?, ?, ?)")) {
+                delete.setString(1, name);
+                delete.executeUpdate();
+                insertLootTimes(insert, name, source);
+            }
+            connection.commit();
+        } catch (SQLException ex) {
+            rollback();
+            throw new IOException(ex);
+        } catch (IOException ex) {
+            //The source could not be read so keep the old loot times
+            rollback();
+            throw ex;
+        } finally {
+            autoCommit();
+        }
+    }
+
+    @Override
+    public void loadLootTimes(String name, LootTimeFilter filter, LootTimeConsumer consumer) throws IOException {
+        synchronized (reader) {
+            try (PreparedStatement statement = reader.prepareStatement(
+                    "SELECT chest, user_most, user_least, time FROM loot_times WHERE " + where(filter))) {
+                bind(statement, name, filter);
+                statement.setFetchSize(BATCH_SIZE);
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        String chest = results.getString(1);
+                        consumer.accept(chest.equals(NO_CHEST) ? null : chest,
+                                        results.getLong(2), results.getLong(3), results.getLong(4));
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    @Override
+    public boolean isIndexed() {
+        return true;
+    }
+
+    @Override
+    public long loadLootTime(String name, String chest, long most, long least) throws IOException {
+        synchronized (lookup) {
+            try {
+                lookup.setString(1, name);
+                lookup.setString(2, chest == null ? NO_CHEST : chest);
+                lookup.setLong(3, most);
+                lookup.setLong(4, least);
+                try (ResultSet results = lookup.executeQuery()) {
+                    return results.next() ? results.getLong(1) : Long.MIN_VALUE;
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void updateLootTimes(String name, List<LootTimeFilter> removed, long expiredBefore,
+                                             LootTimeSource changed) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            for (LootTimeFilter filter : removed) {
+                try (PreparedStatement delete = connection.prepareStatement("DELETE FROM loot_times WHERE " + where(filter))) {
+                    bind(delete, name, filter);
+                    delete.executeUpdate();
+                }
+            }
+            if (expiredBefore != Long.MIN_VALUE) {
+                try (PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM loot_times WHERE phatloot = ? AND time < ?")) {
+                    delete.setString(1, name);
+                    delete.setLong(2, expiredBefore);
+                    delete.executeUpdate();
+                }
+            }
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT INTO loot_times (phatloot, chest, user_most, user_least, time) VALUES (?, ?, ?, ?, ?) "
+                    + "ON CONFLICT (phatloot, chest, user_most, user_least) DO UPDATE SET time = excluded.time")) {
+                insertLootTimes(upsert, name, changed);
+            }
+            connection.commit();
+        } catch (SQLException ex) {
+            rollback();
+            throw new IOException(ex);
+        } catch (IOException ex) {
+            //The source could not be read so keep the old loot times
+            rollback();
+            throw ex;
+        } finally {
+            autoCommit();
+        }
+    }
+
+    @Override
+    public Collection<UUID> getPlayerLootTimeUsers() throws IOException {
+        synchronized (reader) {
+            List<UUID> users = new ArrayList<>();
+            try (Statement statement = reader.createStatement();
+                 ResultSet results = statement.executeQuery("SELECT DISTINCT user_most, user_least FROM player_loot_times")) {
+                while (results.next()) {
+                    users.add(new UUID(results.getLong(1), results.getLong(2)));
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+            return users;
+        }
+    }
+
+    @Override
+    public void loadPlayerLootTimes(UUID user, PlayerLootTimeConsumer consumer) throws IOException {
+        synchronized (reader) {
+            try (PreparedStatement statement = reader.prepareStatement(
+                    "SELECT phatloot, chest, time FROM player_loot_times WHERE user_most = ? AND user_least = ?")) {
+                statement.setLong(1, user.getMostSignificantBits());
+                statement.setLong(2, user.getLeastSignificantBits());
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        String chest = results.getString(2);
+                        consumer.accept(results.getString(1), chest.equals(NO_CHEST) ? null : chest, results.getLong(3));
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void savePlayerLootTimes(UUID user, PlayerLootTimeSource source) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement delete = connection.prepareStatement(
+                         "DELETE FROM player_loot_times WHERE user_most = ? AND user_least = ?");
+                 PreparedStatement insert = connection.prepareStatement(
+                         "INSERT OR REPLACE INTO player_loot_times (user_most, user_least, phatloot, chest, time) VALUES (?, ?, ?, ?, ?)")) {
+                delete.setLong(1, user.getMostSignificantBits());
+                delete.setLong(2, user.getLeastSignificantBits());
+                delete.executeUpdate();
+
+                SQLException[] error = new SQLException[1];
+                source.forEach((phatLoot, chest, time) -> {
+                    if (error[0] != null) {
+                        return;
+                    }
+                    try {
+                        insert.setLong(1, user.getMostSignificantBits());
+                        insert.setLong(2, user.getLeastSignificantBits());
+                        insert.setString(3, phatLoot);
+                        insert.setString(4, chest == null ? NO_CHEST : chest);
+                        insert.setLong(5, time);
+                        insert.addBatch();
+                    } catch (SQLException ex) {
+                        error[0] = ex;
+                    }
+                });
+                if (error[0] != null) {
+                    throw error[0];
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException ex) {
+            rollback();
+            throw new IOException(ex);
+        } catch (IOException ex) {
+            //The source could not be read so keep the old loot times
+            rollback();
+            throw ex;
+        } finally {
+            autoCommit();
+        }
+    }
+
+    @Override
+    public synchronized void removePlayerLootTimes(String name, LootTimeFilter filter) throws IOException {
+        //The columns of player_loot_times have the same names as those of loot_times
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM player_loot_times WHERE " + where(filter))) {
+            bind(statement, name, filter);
+            statement.executeUpdate();
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String name) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            for (String sql : new String[] {
+                    "DELETE FROM loot_tables WHERE name = ?",
+                    "DELETE FROM chests WHERE phatloot = ?",
+                    "DELETE FROM loot_times WHERE phatloot = ?",
+                    "DELETE FROM player_loot_times WHERE phatloot = ?" }) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setString(1, name);
+                    statement.executeUpdate();
+                }
+            }
+            connection.commit();
+        } catch (SQLException ex) {
+            rollback();
+            throw new IOException(ex);
+        } finally {
+            autoCommit();
+        }
+    }
+
+    /**
+     * Adds each loot time of the source to the given statement in batches
+     *
+     * @param insert The statement which takes the PhatLoot, chest, user and time
+     * @param name The name of the PhatLoot
+     * @param source The source of the loot times
+     * @throws SQLException if a batch could not be written
+     * @throws IOException if the source could not be read
+     */
+    private static void insertLootTimes(PreparedStatement insert, String name, LootTimeSource source)
+            throws SQLException, IOException {
+        int[] count = new int[1];
+        SQLException[] error = new SQLException[1];
+        source.forEach((chest, most, least, time) -> {
+            if (error[0] != null) {
+                return;
+            }
+            try {
+                insert.setString(1, name);
+                insert.setString(2, chest == null ? NO_CHEST : chest);
+                insert.setLong(3, most);
+                insert.setLong(4, least);
+                insert.setLong(5, time);
+                insert.addBatch();
+                if (++count[0] % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            } catch (SQLException ex) {
+                error[0] = ex;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        insert.executeBatch();
+    }
+
+    /**
+     * Returns the conditions which select the loot times of the given filter.
+     * The name of the PhatLoot is always the first parameter
+     *
+     * @param filter The filter of the loot times
+     * @return The conditions of a WHERE clause
+     */
+    private static String where(LootTimeFilter filter) {
+        StringBuilder conditions = new StringBuilder("phatloot = ?");
+        if (filter.world() != null) {
+            //Chests of a World sort from world' up to world( since ( follows ' so the primary key is used
+            conditions.append(" AND chest >= ? AND chest < ?");
+        }
+        if (filter.chest() != null) {
+            conditions.append(" AND chest = ?");
+        }
+        if (filter.user() != null) {
+            conditions.append(" AND user_most = ? AND user_least = ?");
+        }
+        if (filter.playersOnly()) {
+            conditions.append(" AND NOT (user_most = 0 AND user_least = 0)");
+        }
+        return conditions.toString();
+    }
+
+    /**
+     * Sets the parameters of a statement whose conditions were given by where(filter)
+     *
+     * @param statement The statement to set the parameters of
+     * @param name The name of the PhatLoot
+     * @param filter The filter of the loot times
+     * @throws SQLException if a parameter could not be set
+     */
+    private static void bind(PreparedStatement statement, String name, LootTimeFilter filter) throws SQLException {
+        int index = 1;
+        statement.setString(index++, name);
+        if (filter.world() != null) {
+            statement.setString(index++, filter.world() + "'");
+            statement.setString(index++, filter.world() + "(");
+        }
+        if (filter.chest() != null) {
+            statement.setString(index++, filter.chest());
+        }
+        if (filter.user() != null) {
+            statement.setLong(index++, filter.user().getMostSignificantBits());
+            statement.setLong(index, filter.user().getLeastSignificantBits());
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void autoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.codisimus.plugins.phatloots.storage;
+
+import com.codisimus.plugins.phatloots.PhatLoots;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Copies all PhatLoot data from one LootStorage to another.
+ * Each PhatLoot is copied on its own and loot times are streamed from one storage to the other
+ * so that the data never has to be held in memory all at once
+ *
+ * @author Codisimus
+ */
+public class StorageMigration {
+
+    /**
+     * Copies every loot table along with its chests and loot times
+     *
+     * @param from The storage to read from
+     * @param to The storage to write to
+     * @return The number of PhatLoots which were copied
+     * @throws IOException if the names of the loot tables could not be read
+     */
+    public static int migrate(LootStorage from, LootStorage to) throws IOException {
+        int count = 0;
+        for (String name : from.getLootTableNames()) {
+            try {
+                String data = from.loadLootTable(name);
+                if (data == null) {
+                    continue;
+                }
+                to.saveLootTable(name, data);
+                to.saveChests(name, from.loadChests(name));
+                to.saveLootTimes(name, consumer -> from.loadLootTimes(name, consumer));
+                count++;
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Failed to migrate PhatLoot " + name, ex);
+            }
+        }
+
+        //Loot times of players which are saved apart from their PhatLoots
+        for (UUID user : from.getPlayerLootTimeUsers()) {
+            try {
+                to.savePlayerLootTimes(user, consumer -> from.loadPlayerLootTimes(user, consumer));
+            } catch (IOException ex) {
+                PhatLoots.logger.log(Level.SEVERE, "Failed to migrate loot times of " + user, ex);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,210 @@
+package com.codisimus.plugins.phatloots.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * An open addressing hash map of primitive long keys to objects.
+ * Keys are not boxed so that lookups do not allocate
+ *
+ * @param <V> The type of the values
+ * @author Codisimus
+ */
+public class LongObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 16;
+    private long[] keys = new long[MIN_CAPACITY];
+    private Object[] values = new Object[MIN_CAPACITY]; //null if the slot is empty
+    private int size;
+
+    /**
+     * Returns the value of the given key
+     *
+     * @param key The key of the value
+     * @return The value or null if the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the given key is mapped to a value
+     *
+     * @param key The key to look for
+     * @return true if there is a value for the key
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the given key to the given value, replacing any previous value
+     *
+     * @param key The key of the value
+     * @param value The value which may not be null
+     * @return The previous value or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value may not be null");
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the given key, mapping the key to a new value if there is none
+     *
+     * @param key The key of the value
+     * @param function The function which creates a value for the key
+     * @return The current or new value
+     */
+    public V computeIfAbsent(long key, LongFunction<V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the value of the given key
+     *
+     * @param key The key of the value
+     * @return The removed value or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                shiftBack(i);
+                size--;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of keys in the map
+     *
+     * @return The number of mapped keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if there are no keys in the map
+     *
+     * @return true if the map is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every key from the map
+     */
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Returns a copy of all values in the map
+     *
+     * @return A List of the values in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                list.add((V) value);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Empties the given slot and moves back any following entries which would no longer be found
+     *
+     * @param i The index of the slot to empty
+     */
+    private void shiftBack(int i) {
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+
+            //Move the entry if its home slot is not between the empty slot and its current slot
+            int home = hash(keys[j]) & mask;
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldValues[k] != null) {
+                int i = hash(oldKeys[k]) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[k];
+                values[i] = oldValues[k];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        //Mix the bits so that nearby coordinates do not collide
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,79 @@
+package com.codisimus.plugins.phatloots.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.bukkit.Material;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Places loot into random slots of an Inventory.
+ * The contents are read and written only once no matter how many items are placed
+ *
+ * @author Codisimus
+ */
+public class LootPlacement {
+    /**
+     * Places the given items into random empty slots of the given Inventory.
+     * Items are first merged into similar stacks which are not yet full as Inventory.addItem would do.
+     * Empty slots are picked with a partial Fisher–Yates shuffle so each slot is only looked at once
+     *
+     * @param inventory The Inventory to add the items to
+     * @param items The items to add
+     * @return The items which did not fit in the Inventory
+     */
+    public static List<ItemStack> place(Inventory inventory, Collection<ItemStack> items) {
+        ItemStack[] contents = inventory.getStorageContents();
+        int[] empty = new int[contents.length];
+        int emptyCount = 0;
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] == null || contents[i].getType() == Material.AIR) {
+                contents[i] = null;
+                empty[emptyCount++] = i;
+            }
+        }
+
+        RandomSource random = PhatLootsUtil.getRandom();
+        List<ItemStack> leftovers = new ArrayList<>();
+        for (ItemStack item : items) {
+            if (item == null || item.getType() == Material.AIR) {
+                continue;
+            }
+
+            int amount = item.getAmount();
+            int maxStackSize = Math.min(item.getMaxStackSize(), inventory.getMaxStackSize());
+
+            //Fill similar stacks first
+            for (int i = 0; i < contents.length && amount > 0; i++) {
+                ItemStack stack = contents[i];
+                if (stack != null && stack.getAmount() < maxStackSize && stack.isSimilar(item)) {
+                    int moved = Math.min(amount, maxStackSize - stack.getAmount());
+                    stack.setAmount(stack.getAmount() + moved);
+                    amount -= moved;
+                }
+            }
+
+            //Place the rest in random empty slots, each picked slot is swapped out of the candidates
+            while (amount > 0 && emptyCount > 0) {
+                int pick = random.nextInt(emptyCount);
+                int slot = empty[pick];
+                empty[pick] = empty[--emptyCount];
+
+                ItemStack stack = item.clone();
+                stack.setAmount(Math.min(amount, maxStackSize));
+                contents[slot] = stack;
+                amount -= stack.getAmount();
+            }
+
+            if (amount > 0) {
+                ItemStack leftover = item.clone();
+                leftover.setAmount(amount);
+                leftovers.add(leftover);
+            }
+        }
+
+        inventory.setStorageContents(contents);
+        return leftovers;
+    }
+}
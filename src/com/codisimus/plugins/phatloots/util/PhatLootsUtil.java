@@ -3,8 +3,7 @@ package com.codisimus.plugins.phatloots.util;
 import java.io.FilenameFilter;
 import java.util.EnumSet;
 import java.util.LinkedList;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 import com.codisimus.plugins.phatloots.PhatLoot;
 import com.codisimus.plugins.phatloots.PhatLoots;
@@ -27,11 +26,13 @@ import org.bukkit.inventory.ItemStack;
  * @author Codisimus
  */
 public class PhatLootsUtil {
-    private static Random random = ThreadLocalRandom.current();
+    private static volatile RandomSource randomSource = RandomSource.perThread();
+    private static final ThreadLocal<RandomSource> scopedRandomSource = new ThreadLocal<>(); //Overrides the RandomSource for a single thread
     public static final String PROPERTIES_EXTENSION = ".properties";
     public static final String TEXT_EXTENSION = ".txt";
     public static final String YAML_EXTENSION = ".yml";
     public static final FilenameFilter YAML_FILTER = (dir, name) -> name.toLowerCase().endsWith(YAML_EXTENSION);
+    public static final FilenameFilter PROPERTIES_FILTER = (dir, name) -> name.toLowerCase().endsWith(PROPERTIES_EXTENSION);
 
     /**
      * Returns true if the given player is allowed to loot the specified PhatLoot
@@ -67,7 +68,7 @@ public class PhatLootsUtil {
      * @return a random int between 0 and y
      */
     public static int rollForInt(int upper) {
-        return random.nextInt(upper + 1); //+1 is needed to make it inclusive
+        return getRandom().nextInt(upper + 1); //+1 is needed to make it inclusive
     }
 
     /**
@@ -78,7 +79,7 @@ public class PhatLootsUtil {
      * @return a random int between x and y
      */
     public static int rollForInt(int lower, int upper) {
-        return random.nextInt(upper + 1 - lower) + lower;
+        return getRandom().nextInt(upper + 1 - lower) + lower;
     }
 
     /**
@@ -88,7 +89,7 @@ public class PhatLootsUtil {
      * @return a random double between 0 and y
      */
     public static double rollForDouble(double upper) {
-        return random.nextDouble() * upper;
+        return getRandom().nextDouble() * upper;
     }
 
     /**
@@ -99,7 +100,49 @@ public class PhatLootsUtil {
      * @return a random double between x and y
      */
     public static double rollForDouble(int lower, int upper) {
-        return random.nextInt(upper + 1 - lower) + lower;
+        return getRandom().nextInt(upper + 1 - lower) + lower;
+    }
+
+    /**
+     * Returns the RandomSource which loot is rolled with on the current thread
+     *
+     * @return The RandomSource of this thread if one is in use, otherwise the global RandomSource
+     */
+    public static RandomSource getRandom() {
+        RandomSource source = scopedRandomSource.get();
+        return source == null ? randomSource : source;
+    }
+
+    /**
+     * Sets the RandomSource which loot is rolled with on every thread
+     *
+     * @param source The new RandomSource
+     */
+    public static void setRandomSource(RandomSource source) {
+        randomSource = source;
+    }
+
+    /**
+     * Runs the given task with every roll of the current thread using the given RandomSource.
+     * This allows simulations to be reproduced without affecting rolls on other threads
+     *
+     * @param source The RandomSource to roll with
+     * @param task The task which rolls for loot
+     * @param <T> The type of the result
+     * @return The result of the task
+     */
+    public static <T> T withRandomSource(RandomSource source, Supplier<T> task) {
+        RandomSource previous = scopedRandomSource.get();
+        scopedRandomSource.set(source);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                scopedRandomSource.remove();
+            } else {
+                scopedRandomSource.set(previous);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,114 @@
+package com.codisimus.plugins.phatloots.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * A source of the random numbers which loot is rolled with.
+ * The default gives each thread its own SplittableRandom stream while a seeded source makes rolls reproducible
+ *
+ * @author Codisimus
+ */
+public interface RandomSource {
+    /**
+     * Returns a random int between 0 (inclusive) and the given bound (exclusive)
+     *
+     * @param bound The upper bound which must be positive
+     * @return The random int
+     */
+    int nextInt(int bound);
+
+    /**
+     * Returns a random double between 0 (inclusive) and 1 (exclusive)
+     *
+     * @return The random double
+     */
+    double nextDouble();
+
+    /**
+     * Returns a RandomSource which gives each thread its own stream so that no two threads contend for one
+     *
+     * @return A new per thread RandomSource
+     */
+    static RandomSource perThread() {
+        return new PerThread(new SplittableRandom());
+    }
+
+    /**
+     * Returns a RandomSource which gives the same numbers in the same order for the same seed.
+     * Only rolls which happen in the same order are reproduced so the source should be used by one thread at a time
+     *
+     * @param seed The seed of the stream
+     * @return A new seeded RandomSource
+     */
+    static Seeded seeded(long seed) {
+        return new Seeded(seed);
+    }
+
+    /**
+     * Gives each thread its own SplittableRandom which is split from a root stream
+     */
+    final class PerThread implements RandomSource {
+        private final ThreadLocal<SplittableRandom> random;
+
+        private PerThread(SplittableRandom root) {
+            random = ThreadLocal.withInitial(() -> {
+                synchronized (root) {
+                    return root.split();
+                }
+            });
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return random.get().nextInt(bound);
+        }
+
+        @Override
+        public double nextDouble() {
+            return random.get().nextDouble();
+        }
+    }
+
+    /**
+     * A single SplittableRandom stream from a seed.
+     * Independent streams for parallel work are split off in a fixed order so the work stays reproducible
+     */
+    final class Seeded implements RandomSource {
+        private final long seed;
+        private final SplittableRandom random;
+
+        private Seeded(long seed) {
+            this.seed = seed;
+            random = new SplittableRandom(seed);
+        }
+
+        /**
+         * Splits off a new Seeded source whose stream only depends on the seed and what was drawn from this source before
+         *
+         * @return A new Seeded RandomSource
+         */
+        public synchronized Seeded split() {
+            return new Seeded(random.nextLong());
+        }
+
+        /**
+         * Returns a new Seeded source which starts over from the seed of this one.
+         * Nothing is drawn from this source so its own stream is left as it was
+         *
+         * @return A new Seeded RandomSource with the same seed
+         */
+        public Seeded restart() {
+            return new Seeded(seed);
+        }
+
+        @Override
+        public synchronized int nextInt(int bound) {
+            return random.nextInt(bound);
+        }
+
+        @Override
+        public synchronized double nextDouble() {
+            return random.nextDouble();
+        }
+    }
+}
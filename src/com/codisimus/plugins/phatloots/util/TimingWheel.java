@@ -0,0 +1,101 @@
+package com.codisimus.plugins.phatloots.util;
+
+import java.util.Collection;
+
+/**
+ * A hashed timing wheel which schedules items to be due after a number of ticks.
+ * Scheduling and advancing one tick are constant time no matter how many items are waiting
+ *
+ * @param <T> The type of the scheduled items
+ * @author Codisimus
+ */
+public class TimingWheel<T> {
+    private final Node<T>[] slots;
+    private final int mask;
+    private long tick;
+    private int size;
+
+    private static class Node<T> {
+        private final T item;
+        private final long deadline;
+        private Node<T> next;
+
+        private Node(T item, long deadline, Node<T> next) {
+            this.item = item;
+            this.deadline = deadline;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Constructs a new TimingWheel
+     *
+     * @param slots The number of slots which is rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int slots) {
+        int capacity = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.slots = new Node[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the current tick of the wheel
+     *
+     * @return The number of times that the wheel has advanced
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Schedules the given item to be due after the given number of ticks
+     *
+     * @param item The item to schedule
+     * @param delay The number of ticks to wait which is at least 1
+     * @return The tick at which the item will be due
+     */
+    public long schedule(T item, long delay) {
+        long deadline = tick + Math.max(1, delay);
+        int i = (int) (deadline & mask);
+        slots[i] = new Node<>(item, deadline, slots[i]);
+        size++;
+        return deadline;
+    }
+
+    /**
+     * Advances the wheel by one tick.
+     * Items which are scheduled for a later rotation are left in the slot
+     *
+     * @param due The Collection to add each item which is now due to
+     */
+    public void advance(Collection<T> due) {
+        tick++;
+        int i = (int) (tick & mask);
+        Node<T> previous = null;
+        Node<T> node = slots[i];
+        while (node != null) {
+            if (node.deadline <= tick) {
+                due.add(node.item);
+                size--;
+                if (previous == null) {
+                    slots[i] = node.next;
+                } else {
+                    previous.next = node.next;
+                }
+            } else {
+                previous = node;
+            }
+            node = node.next;
+        }
+    }
+
+    /**
+     * Returns the number of scheduled items
+     *
+     * @return The number of items which are not yet due
+     */
+    public int size() {
+        return size;
+    }
+}
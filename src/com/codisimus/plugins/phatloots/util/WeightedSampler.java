@@ -0,0 +1,234 @@
+package com.codisimus.plugins.phatloots.util;
+
+/**
+ * Picks indices of a list of weights in proportion to their weight.
+ * An alias table picks with replacement in constant time, prefix sums are binary searched when the roll is shifted
+ * and a Fenwick tree which is copied for each Draw picks without replacement in logarithmic time.
+ * A WeightedSampler is never modified once it is constructed so it may be shared between threads
+ *
+ * @author Codisimus
+ */
+public class WeightedSampler {
+    private final int size;
+    private final double total;
+    private final double[] weights;
+    private final double[] prefix; //prefix[i] is the sum of the weights up to and including i
+    private final double[] aliasProbability; //Chance of keeping the column rather than using its alias
+    private final int[] alias;
+    private final double[] tree; //Fenwick tree of the weights (1-based)
+    private final int[] countTree; //Fenwick tree of the number of indices (1-based)
+
+    /**
+     * Constructs a new WeightedSampler.
+     * Negative weights are treated as 0
+     *
+     * @param weights The weight of each index in order
+     */
+    public WeightedSampler(double[] weights) {
+        size = weights.length;
+        this.weights = new double[size];
+        prefix = new double[size];
+        tree = new double[size + 1];
+        countTree = new int[size + 1];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            double weight = Math.max(0, weights[i]);
+            this.weights[i] = weight;
+            sum += weight;
+            prefix[i] = sum;
+            tree[i + 1] += weight;
+            countTree[i + 1]++;
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= size) {
+                tree[parent] += tree[i + 1];
+                countTree[parent] += countTree[i + 1];
+            }
+        }
+        total = sum;
+
+        //Build the alias table using Vose's method
+        aliasProbability = new double[size];
+        alias = new int[size];
+        if (total > 0) {
+            double[] scaled = new double[size];
+            int[] small = new int[size];
+            int[] large = new int[size];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < size; i++) {
+                scaled[i] = this.weights[i] * size / total;
+                if (scaled[i] < 1) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                aliasProbability[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1;
+                if (scaled[more] < 1) {
+                    small[smallCount++] = more;
+                } else {
+                    large[largeCount++] = more;
+                }
+            }
+            //Whatever is left is only off from 1 due to rounding
+            while (largeCount > 0) {
+                aliasProbability[large[--largeCount]] = 1;
+            }
+            while (smallCount > 0) {
+                aliasProbability[small[--smallCount]] = 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of weights
+     *
+     * @return The number of indices which may be picked
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the sum of all weights
+     *
+     * @return The total weight
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Picks an index with replacement.
+     * The roll is random * total - shift and the first index whose prefix sum reaches the roll is picked
+     * so a positive shift favors the earlier indices
+     *
+     * @param random A random number between 0 (inclusive) and 1 (exclusive)
+     * @param shift The amount to subtract from the roll
+     * @return The picked index or -1 if the roll is beyond the total weight
+     */
+    public int pick(double random, double shift) {
+        if (size == 0) {
+            return -1;
+        }
+        if (shift == 0 && total > 0) {
+            double column = random * size;
+            int i = Math.min((int) column, size - 1);
+            return column - i < aliasProbability[i] ? i : alias[i];
+        }
+        return search(random * total - shift);
+    }
+
+    /**
+     * Returns the first index whose prefix sum is at least the given roll
+     *
+     * @param roll The roll after it has been shifted
+     * @return The index or -1 if the roll is beyond the total weight
+     */
+    private int search(double roll) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prefix[mid] < roll) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == size ? -1 : low;
+    }
+
+    /**
+     * Starts a new series of picks without replacement
+     *
+     * @return A Draw which only this thread should use
+     */
+    public Draw draw() {
+        return new Draw();
+    }
+
+    /**
+     * A series of picks in which each index may only be picked once
+     */
+    public class Draw {
+        private final double[] sums = tree.clone();
+        private final int[] counts = countTree.clone();
+        private final boolean[] picked = new boolean[size];
+        private double remaining = total;
+        private int remainingCount = size;
+
+        /**
+         * Picks an index which has not yet been picked and removes it.
+         * The roll is random * remaining weight - shift as with {@link WeightedSampler#pick}
+         *
+         * @param random A random number between 0 (inclusive) and 1 (exclusive)
+         * @param shift The amount to subtract from the roll
+         * @return The picked index or -1 if nothing was picked
+         */
+        public int pick(double random, double shift) {
+            if (remainingCount == 0) {
+                return -1;
+            }
+
+            double roll = random * remaining - shift;
+            int i;
+            if (roll <= 0) {
+                //The first remaining index is picked even if its weight is 0
+                i = firstRemaining();
+            } else {
+                i = lowerBound(roll);
+                if (i < 0) {
+                    return -1;
+                }
+                //Rounding may leave a sliver of weight behind for an index which was already picked
+                while (picked[i]) {
+                    if (++i == size) {
+                        return -1;
+                    }
+                }
+            }
+            remove(i);
+            return i;
+        }
+
+        private int lowerBound(double roll) {
+            int pos = 0;
+            for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+                if (pos + step <= size && sums[pos + step] < roll) {
+                    pos += step;
+                    roll -= sums[pos];
+                }
+            }
+            return pos == size ? -1 : pos;
+        }
+
+        private int firstRemaining() {
+            int pos = 0;
+            int target = 1;
+            for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+                if (pos + step <= size && counts[pos + step] < target) {
+                    pos += step;
+                    target -= counts[pos];
+                }
+            }
+            return pos;
+        }
+
+        private void remove(int index) {
+            double weight = weights[index];
+            picked[index] = true;
+            remaining -= weight;
+            remainingCount--;
+            for (int i = index + 1; i <= size; i += i & -i) {
+                sums[i] -= weight;
+                counts[i]--;
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.codisimus.plugins.phatloots;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that loot times never resolve a chest id through PhatLootChest.getChest(int).
+ * Chests are evicted along with their Chunk so getChest returns null for their ids while loot times are still kept.
+ * PhatLootChest.getLocation must be used instead
+ *
+ * @author Codisimus
+ */
+public class LootTimeChestIdTest {
+    private static final Path SOURCE = Paths.get("src", "com", "codisimus", "plugins", "phatloots");
+    private static final String[] LOOT_TIME_FILES = {
+        "PhatLoot.java", "LootTimes.java", "LootTimesFile.java", "PlayerLootTimes.java", "ChestRespawns.java"
+    };
+    private static final Pattern GET_CHEST_BY_ID = Pattern.compile("PhatLootChest\\.getChest\\((\\w+)\\)");
+
+    @Test
+    public void lootTimesResolveChestIdsByLocation() throws IOException {
+        List<String> calls = new ArrayList<>();
+        for (String name : LOOT_TIME_FILES) {
+            Path file = SOURCE.resolve(name);
+            if (!Files.exists(file)) {
+                continue;
+            }
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (int i = 0; i < lines.size(); i++) {
+                Matcher matcher = GET_CHEST_BY_ID.matcher(lines.get(i));
+                while (matcher.find()) {
+                    //Blocks and the split lines of Chests files are looked up by location and are safe to pass
+                    if (!matcher.group(1).equals("block") && !matcher.group(1).equals("split")) {
+                        calls.add(name + ":" + (i + 1) + " " + lines.get(i).trim());
+                    }
+                }
+            }
+        }
+        assertTrue("Chest ids must be resolved with PhatLootChest.getLocation: " + calls, calls.isEmpty());
+    }
+}
@@ -0,0 +1,141 @@
+package com.codisimus.plugins.phatloots.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the WeightedSampler against the list algorithm which LootCollection used before it.
+ * Both are rolled with the same seeded Random and their counts are compared with a chi-square test
+ *
+ * @author Codisimus
+ */
+public class WeightedSamplerTest {
+    private static final double[] WEIGHTS = {0, 0.5, 1, 2, 5, 5, 10, 20, 40}; //Includes a zero weight and a tie
+    private static final int TRIALS = 200000;
+    private static final double CRITICAL = 29.59; //Chi-square at p = 0.001 with 10 degrees of freedom
+
+    @Test
+    public void testPickMatchesListWithoutBonus() {
+        assertSameDistribution(0, 1, true);
+    }
+
+    @Test
+    public void testPickMatchesListWithSmallBonus() {
+        assertSameDistribution(3, 1, true);
+    }
+
+    @Test
+    public void testPickMatchesListWithLargeBonus() {
+        assertSameDistribution(30, 1, true);
+    }
+
+    @Test
+    public void testPickManyMatchesList() {
+        assertSameDistribution(0, 4, true);
+        assertSameDistribution(3, 4, true);
+        assertSameDistribution(30, 4, true);
+    }
+
+    @Test
+    public void testDrawMatchesList() {
+        assertSameDistribution(0, 4, false);
+        assertSameDistribution(3, 4, false);
+        assertSameDistribution(30, 4, false);
+    }
+
+    @Test
+    public void testDrawPicksEachIndexOnce() {
+        WeightedSampler sampler = new WeightedSampler(WEIGHTS);
+        WeightedSampler.Draw draw = sampler.draw();
+        Random random = new Random(7);
+        boolean[] seen = new boolean[WEIGHTS.length];
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            int picked = draw.pick(random.nextDouble(), 30);
+            assertTrue(picked >= 0);
+            assertFalse("Index " + picked + " was picked twice", seen[picked]);
+            seen[picked] = true;
+        }
+        assertEquals(-1, draw.pick(random.nextDouble(), 30));
+    }
+
+    @Test
+    public void testZeroWeightIsNeverPickedWithoutBonus() {
+        WeightedSampler sampler = new WeightedSampler(WEIGHTS);
+        Random random = new Random(11);
+        for (int i = 0; i < TRIALS; i++) {
+            assertNotEquals(0, sampler.pick(random.nextDouble(), 0));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        WeightedSampler sampler = new WeightedSampler(new double[0]);
+        assertEquals(-1, sampler.pick(0.5, 0));
+        assertEquals(-1, sampler.draw().pick(0.5, 0));
+    }
+
+    /**
+     * Rolls the sampler and the list algorithm and fails if their counts differ by more than chance
+     *
+     * @param bonus The looting bonus which shifts each roll
+     * @param picks The number of picks of each trial
+     * @param duplicates True if an index may be picked more than once in a trial
+     */
+    private static void assertSameDistribution(double bonus, int picks, boolean duplicates) {
+        Random random = new Random(42);
+        WeightedSampler sampler = new WeightedSampler(WEIGHTS);
+        long[] listCounts = new long[WEIGHTS.length + 1]; //Index + 1 so that -1 is counted as well
+        long[] samplerCounts = new long[WEIGHTS.length + 1];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            List<Integer> list = new ArrayList<>();
+            for (int i = 0; i < WEIGHTS.length; i++) {
+                list.add(i);
+            }
+            WeightedSampler.Draw draw = sampler.draw();
+            for (int pick = 0; pick < picks; pick++) {
+                listCounts[pickFromList(list, random.nextDouble(), bonus, duplicates) + 1]++;
+                samplerCounts[(duplicates
+                               ? sampler.pick(random.nextDouble(), bonus)
+                               : draw.pick(random.nextDouble(), bonus)) + 1]++;
+            }
+        }
+
+        double chiSquare = 0;
+        for (int i = 0; i < listCounts.length; i++) {
+            double expected = (listCounts[i] + samplerCounts[i]) / 2.0;
+            if (expected > 0) {
+                chiSquare += Math.pow(listCounts[i] - expected, 2) / expected
+                             + Math.pow(samplerCounts[i] - expected, 2) / expected;
+            }
+        }
+        assertTrue("bonus=" + bonus + " picks=" + picks + " duplicates=" + duplicates + " chi-square=" + chiSquare,
+                   chiSquare < CRITICAL);
+    }
+
+    /**
+     * Picks from the list in order by subtracting each weight from the roll as LootCollection used to
+     *
+     * @param list The indices which may still be picked
+     * @param random A random number between 0 (inclusive) and 1 (exclusive)
+     * @param bonus The amount to subtract from the roll
+     * @param duplicates False if the picked index should be removed from the list
+     * @return The picked index or -1 if nothing was picked
+     */
+    private static int pickFromList(List<Integer> list, double random, double bonus, boolean duplicates) {
+        double total = 0;
+        for (int index : list) {
+            total += WEIGHTS[index];
+        }
+        double roll = random * total - bonus;
+        for (int i = 0; i < list.size(); i++) {
+            roll -= WEIGHTS[list.get(i)];
+            if (roll <= 0) {
+                return duplicates ? list.get(i) : list.remove(i);
+            }
+        }
+        return -1;
+    }
+}